@@ -0,0 +1,79 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Picks the best of the move-to-front variants for each block
+ *
+ * Which variant works best depends on the data: classic move-to-front on
+ * text with short runs, MTF-1/MTF-2 where runs are interrupted by single other
+ * bytes, distance coding on very repetitive blocks where one number per run
+ * leaves the entropy coder far fewer symbols. Each block is encoded with every
+ * variant and the output with the smallest order-0 entropy (in bits, the size
+ * the Huffman stage would reach) is kept:
+ *
+ *   byte variant | output of the variant
+ *
+ * variant is the index in VARIANTS, so the decoder runs the same variant.
+ * Encoding costs one pass per variant; decoding costs one pass.
+ *
+ * Dependency: Stage.java, Compressor.java, MoveToFront.java,
+ * DistanceCodingStage.java, SymbolKernels.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class AdaptiveMoveToFrontStage implements Stage {
+	// the order is the format: append new variants at the end
+	private static final Stage[] VARIANTS = { new Compressor.MoveToFrontStage(MoveToFront.Rule.MTF),
+			new Compressor.MoveToFrontStage(MoveToFront.Rule.MTF1),
+			new Compressor.MoveToFrontStage(MoveToFront.Rule.MTF2), new DistanceCodingStage() };
+	private static final SymbolKernels KERNELS = SymbolKernels.get();
+
+	public String name() {
+		return "adaptive-mtf";
+	}
+
+	public byte[] encode(byte[] block) {
+		byte[] best = null;
+		int variant = 0;
+		double bestBits = Double.POSITIVE_INFINITY;
+		for (int v = 0; v < VARIANTS.length; v++) {
+			byte[] encoded = VARIANTS[v].encode(block);
+			double bits = entropy(encoded);
+			if (bits < bestBits) {
+				best = encoded;
+				bestBits = bits;
+				variant = v;
+			}
+		}
+
+		byte[] out = new byte[1 + best.length];
+		out[0] = (byte) variant;
+		System.arraycopy(best, 0, out, 1, best.length);
+		return out;
+	}
+
+	public byte[] decode(byte[] block) {
+		if (block.length == 0 || block[0] < 0 || block[0] >= VARIANTS.length) throw new java.lang.IllegalArgumentException();
+		return VARIANTS[block[0]].decode(java.util.Arrays.copyOfRange(block, 1, block.length));
+	}
+
+	/**
+	 * Returns the name of the variant a block encoded by this stage uses
+	 * @throws IllegalArgumentException when the block is not an output of encode()
+	 */
+	public static String variant(byte[] block) {
+		if (block == null || block.length == 0 || block[0] < 0 || block[0] >= VARIANTS.length)
+			throw new java.lang.IllegalArgumentException();
+		return VARIANTS[block[0]].name();
+	}
+
+	// order-0 entropy of the bytes of a, times the number of bytes
+	private static double entropy(byte[] a) {
+		int[] count = KERNELS.histogram(ByteBuffer.wrap(a), 0, a.length);
+		double bits = 0;
+		for (int c = 0; c < 256; c++) {
+			if (count[c] > 0) bits -= count[c] * Math.log((double) count[c] / a.length);
+		}
+		return bits / Math.log(2);
+	}
+}
@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.princeton.cs.algs4.BinaryStdIn;
+import edu.princeton.cs.algs4.BinaryStdOut;
+
+/**
+ * Block mode of the Burrows–Wheeler transform (similar to bzip2 blocks)
+ *
+ * The input is split into blocks of at most blockSize bytes and each block
+ * is transformed independently on its own fork-join task. The output is a
+ * sequence of frames, one per block, followed by a block index:
+ *
+ *   int length | int first | length bytes of t[]      (one frame per block)
+ *   int 0 | int 0                                     (end of the frames)
+ *   long offset | long frame offset | int length      (one entry per block)
+ *   long index offset | int blocks | int "BWTI"       (footer, last 16 bytes)
+ *
+ * offset is the position of the block in the original string and frame offset
+ * the position of its frame in the transform. The inverse transform reads the
+ * frames back up to the empty frame and decodes them in parallel; with the
+ * index, decompressRange() finds the blocks that hold a range of the original
+ * string from the footer and decodes only those.
+ * Only one batch of blocks (one block per worker of the common pool) is held
+ * in memory at a time, so memory is bounded by the block size, not the input size.
+ *
+ * Besides standard input/output there is a file mode for very large inputs:
+ * each block is read through a read-only memory-mapped region of the input
+ * file (FileChannel.map) and written from a reusable direct buffer, so the I/O
+ * makes no heap copies of the data. The suffix sort still copies each block
+ * to the heap: CircularSuffixArraySAIS sorts an int[2N+1] copy of the block.
+ *
+ * Dependency: BurrowsWheeler.java, BinaryStdIn.java, BinaryStdOut.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class BlockBurrowsWheeler {
+	public static final int DEFAULT_BLOCK_SIZE = 900000; // bzip2 -9
+	private static final int FRAME_HEADER = 8; // length and first
+	private static final int INDEX_ENTRY = 20; // offset, frame offset and length
+	private static final int FOOTER = 16; // index offset, blocks and magic
+	private static final int MAGIC = 0x42575449; // "BWTI"
+
+	// a block of input together with its transform
+	private static class Block {
+		private int first;
+		private ByteBuffer in;
+		private ByteBuffer out;
+	}
+
+	// offsets of the blocks, in input order
+	private static class BlockIndex {
+		private long[] offset = new long[16]; // in the original string
+		private long[] frameOffset = new long[16]; // in the transform
+		private int[] length = new int[16];
+		private int size;
+
+		void add(long blockOffset, long blockFrameOffset, int blockLength) {
+			if (size == length.length) {
+				offset = java.util.Arrays.copyOf(offset, 2 * size);
+				frameOffset = java.util.Arrays.copyOf(frameOffset, 2 * size);
+				length = java.util.Arrays.copyOf(length, 2 * size);
+			}
+			offset[size] = blockOffset;
+			frameOffset[size] = blockFrameOffset;
+			length[size] = blockLength;
+			size++;
+		}
+
+		// the end frame, the entries and the footer; the end frame starts at indexOffset - FRAME_HEADER
+		ByteBuffer encode(long indexOffset) {
+			ByteBuffer b = ByteBuffer.allocate(FRAME_HEADER + size * INDEX_ENTRY + FOOTER);
+			b.putInt(0).putInt(0);
+			for (int i = 0; i < size; i++) {
+				b.putLong(offset[i]).putLong(frameOffset[i]).putInt(length[i]);
+			}
+			b.putLong(indexOffset).putInt(size).putInt(MAGIC);
+			b.flip();
+			return b;
+		}
+
+		// reads the index at the end of a transform file
+		static BlockIndex read(FileChannel src) throws IOException {
+			long size = src.size();
+			if (size < FRAME_HEADER + FOOTER) throw new IOException("no block index");
+			ByteBuffer footer = readFully(src, size - FOOTER, FOOTER);
+			long indexOffset = footer.getLong(0);
+			int blocks = footer.getInt(8);
+			if (footer.getInt(12) != MAGIC || blocks < 0 || indexOffset < FRAME_HEADER
+					|| indexOffset + (long) blocks * INDEX_ENTRY != size - FOOTER)
+				throw new IOException("no block index");
+			ByteBuffer entries = readFully(src, indexOffset, blocks * INDEX_ENTRY);
+			BlockIndex index = new BlockIndex();
+			for (int i = 0; i < blocks; i++) {
+				index.add(entries.getLong(), entries.getLong(), entries.getInt());
+			}
+			return index;
+		}
+
+		// the block that holds position p of the original string (binary search)
+		int find(long p) {
+			int lo = 0, hi = size - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (offset[mid] <= p) lo = mid;
+				else hi = mid - 1;
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * Apply block Burrows-Wheeler transform, reading from standard input and
+	 * writing framed blocks to standard output
+	 * @param blockSize maximum number of bytes per block
+	 * @throws IllegalArgumentException when blockSize is not positive
+	 */
+	public static void transform(int blockSize) {
+		if (blockSize <= 0) throw new java.lang.IllegalArgumentException();
+		Block[] batch = new Block[ForkJoinPool.getCommonPoolParallelism()];
+		BlockIndex index = new BlockIndex();
+		long offset = 0, frameOffset = 0;
+
+		while (!BinaryStdIn.isEmpty()) {
+			// read one block per worker
+			int n = 0;
+			while (n < batch.length && !BinaryStdIn.isEmpty()) {
+				batch[n++] = readBlock(blockSize);
+			}
+
+			ForkJoinPool.commonPool().invoke(new TransformTask(batch, 0, n));
+
+			// output the frames in input order
+			for (int i = 0; i < n; i++) {
+				ByteBuffer t = batch[i].out;
+				BinaryStdOut.write(t.limit());
+				BinaryStdOut.write(batch[i].first);
+				for (int k = 0; k < t.limit(); k++) {
+					BinaryStdOut.write(t.get(k));
+				}
+				index.add(offset, frameOffset, t.limit());
+				offset += t.limit();
+				frameOffset += FRAME_HEADER + t.limit();
+				batch[i] = null;
+			}
+		}
+
+		ByteBuffer trailer = index.encode(frameOffset + FRAME_HEADER);
+		while (trailer.hasRemaining()) {
+			BinaryStdOut.write(trailer.get());
+		}
+		BinaryStdOut.flush();
+	}
+
+	/**
+	 * Apply block Burrows-Wheeler transform to file in, writing framed blocks
+	 * to file out
+	 * Blocks are read through memory-mapped regions of in, so the heap holds
+	 * only the suffix sorting state of one batch of blocks
+	 * @param blockSize maximum number of bytes per block
+	 * @throws IllegalArgumentException when a path is null or blockSize is not positive
+	 * @throws UncheckedIOException when a file cannot be read or written
+	 */
+	public static void transform(Path in, Path out, int blockSize) {
+		if (in == null || out == null || blockSize <= 0) throw new java.lang.IllegalArgumentException();
+		Block[] batch = new Block[ForkJoinPool.getCommonPoolParallelism()];
+		ByteBuffer[] frames = new ByteBuffer[batch.length]; // reused for every batch
+		BlockIndex index = new BlockIndex();
+
+		try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+				FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = src.size();
+			long position = 0, offset = 0;
+			while (position < size) {
+				// map one block per worker
+				int n = 0;
+				while (n < batch.length && position < size) {
+					int length = (int) Math.min(blockSize, size - position);
+					if (frames[n] == null || frames[n].capacity() < FRAME_HEADER + length)
+						frames[n] = ByteBuffer.allocateDirect(FRAME_HEADER + length);
+					ByteBuffer frame = frames[n];
+					frame.clear();
+					frame.putInt(length).putInt(0); // first is filled in later
+
+					Block block = new Block();
+					block.in = src.map(FileChannel.MapMode.READ_ONLY, position, length);
+					block.out = frame;
+					batch[n++] = block;
+					position += length;
+				}
+
+				ForkJoinPool.commonPool().invoke(new TransformTask(batch, 0, n));
+
+				// output the frames in input order
+				for (int i = 0; i < n; i++) {
+					ByteBuffer frame = batch[i].out;
+					frame.putInt(4, batch[i].first);
+					frame.flip();
+					index.add(offset, dst.position(), frame.limit() - FRAME_HEADER);
+					offset += frame.limit() - FRAME_HEADER;
+					while (frame.hasRemaining()) {
+						dst.write(frame);
+					}
+					batch[i] = null;
+				}
+			}
+
+			ByteBuffer trailer = index.encode(dst.position() + FRAME_HEADER);
+			while (trailer.hasRemaining()) {
+				dst.write(trailer);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Apply block Burrows-Wheeler inverse transform, reading framed blocks from
+	 * standard input and writing the original string to standard output
+	 */
+	public static void inverseTransform() {
+		Block[] batch = new Block[ForkJoinPool.getCommonPoolParallelism()];
+		boolean end = false; // read the empty frame (the block index follows)
+
+		while (!end && !BinaryStdIn.isEmpty()) {
+			// read one frame per worker
+			int n = 0;
+			while (n < batch.length && !BinaryStdIn.isEmpty()) {
+				Block block = new Block();
+				int length = BinaryStdIn.readInt();
+				block.first = BinaryStdIn.readInt();
+				if (length == 0) {
+					end = true;
+					break;
+				}
+				byte[] t = new byte[length];
+				for (int k = 0; k < length; k++) {
+					t[k] = BinaryStdIn.readByte();
+				}
+				block.in = ByteBuffer.wrap(t);
+				block.out = ByteBuffer.allocate(length);
+				batch[n++] = block;
+			}
+
+			ForkJoinPool.commonPool().invoke(new InverseTask(batch, 0, n));
+
+			for (int i = 0; i < n; i++) {
+				ByteBuffer s = batch[i].out;
+				for (int k = 0; k < s.limit(); k++) {
+					BinaryStdOut.write(s.get(k));
+				}
+				batch[i] = null;
+			}
+		}
+
+		BinaryStdOut.flush();
+	}
+
+	/**
+	 * Apply block Burrows-Wheeler inverse transform to file in (framed blocks),
+	 * writing the original string to file out
+	 * The t[] of each frame is read through a memory-mapped region of in
+	 * @throws IllegalArgumentException when a path is null
+	 * @throws UncheckedIOException when a file cannot be read or written, or in
+	 *         ends in the middle of a frame
+	 */
+	public static void inverseTransform(Path in, Path out) {
+		if (in == null || out == null) throw new java.lang.IllegalArgumentException();
+		Block[] batch = new Block[ForkJoinPool.getCommonPoolParallelism()];
+		ByteBuffer[] outputs = new ByteBuffer[batch.length]; // reused for every batch
+		ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+
+		try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+				FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = src.size();
+			long position = 0;
+			while (position < size) {
+				// map one frame per worker
+				int n = 0;
+				while (n < batch.length && position < size) {
+					header.clear();
+					while (header.hasRemaining()) {
+						if (src.read(header, position + header.position()) < 0)
+							throw new IOException("truncated frame header at " + position);
+					}
+					int length = header.getInt(0);
+					if (length == 0) {
+						position = size; // the block index follows
+						break;
+					}
+					if (length < 0 || position + FRAME_HEADER + length > size)
+						throw new IOException("truncated frame at " + position);
+					if (outputs[n] == null || outputs[n].capacity() < length)
+						outputs[n] = ByteBuffer.allocateDirect(length);
+					outputs[n].clear();
+
+					Block block = new Block();
+					block.first = header.getInt(4);
+					block.in = src.map(FileChannel.MapMode.READ_ONLY, position + FRAME_HEADER, length);
+					block.out = outputs[n];
+					batch[n++] = block;
+					position += FRAME_HEADER + length;
+				}
+
+				ForkJoinPool.commonPool().invoke(new InverseTask(batch, 0, n));
+
+				for (int i = 0; i < n; i++) {
+					ByteBuffer s = batch[i].out;
+					s.flip();
+					while (s.hasRemaining()) {
+						dst.write(s);
+					}
+					batch[i] = null;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Recovers len bytes of the original string starting at position start from
+	 * file in (framed blocks with a block index), decoding only the blocks that
+	 * hold them
+	 * The blocks are found in the block index and read through memory-mapped
+	 * regions of in, so a point read costs one block, not the whole file
+	 * @return the bytes, fewer than len when the range ends after the original string
+	 * @throws IllegalArgumentException when in is null or start or len is negative
+	 * @throws UncheckedIOException when in cannot be read or has no block index
+	 */
+	public static byte[] decompressRange(Path in, long start, int len) {
+		if (in == null || start < 0 || len < 0) throw new java.lang.IllegalArgumentException();
+		try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ)) {
+			BlockIndex index = BlockIndex.read(src);
+			if (index.size == 0) return new byte[0];
+			int last = index.size - 1;
+			long end = Math.min(start + len, index.offset[last] + index.length[last]);
+			if (start >= end) return new byte[0];
+
+			// map the blocks from the one that holds start to the one that holds end - 1
+			int lo = index.find(start), hi = index.find(end - 1) + 1;
+			Block[] blocks = new Block[hi - lo];
+			ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+			for (int i = lo; i < hi; i++) {
+				long position = index.frameOffset[i];
+				int length = index.length[i];
+				header.clear();
+				while (header.hasRemaining()) {
+					if (src.read(header, position + header.position()) < 0)
+						throw new IOException("truncated frame header at " + position);
+				}
+				if (header.getInt(0) != length || position + FRAME_HEADER + length > src.size())
+					throw new IOException("block index does not match frame at " + position);
+
+				Block block = new Block();
+				block.first = header.getInt(4);
+				block.in = src.map(FileChannel.MapMode.READ_ONLY, position + FRAME_HEADER, length);
+				block.out = ByteBuffer.allocate(length);
+				blocks[i - lo] = block;
+			}
+
+			ForkJoinPool.commonPool().invoke(new InverseTask(blocks, 0, blocks.length));
+
+			// copy the range out of the decoded blocks
+			byte[] range = new byte[(int) (end - start)];
+			for (int i = lo; i < hi; i++) {
+				long from = Math.max(start, index.offset[i]);
+				long to = Math.min(end, index.offset[i] + index.length[i]);
+				ByteBuffer s = blocks[i - lo].out;
+				s.position((int) (from - index.offset[i]));
+				s.get(range, (int) (from - start), (int) (to - from));
+			}
+			return range;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// read exactly length bytes of src at position
+	private static ByteBuffer readFully(FileChannel src, long position, int length) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(length);
+		while (b.hasRemaining()) {
+			if (src.read(b, position + b.position()) < 0) throw new IOException("unexpected end of file");
+		}
+		b.flip();
+		return b;
+	}
+
+	// read up to blockSize bytes from standard input
+	private static Block readBlock(int blockSize) {
+		byte[] buffer = new byte[blockSize];
+		int length = 0;
+		while (length < blockSize && !BinaryStdIn.isEmpty()) {
+			buffer[length++] = BinaryStdIn.readByte();
+		}
+		Block block = new Block();
+		block.in = ByteBuffer.wrap(buffer, 0, length);
+		block.out = ByteBuffer.allocate(length);
+		return block;
+	}
+
+	// transforms blocks lo..hi-1, splitting the range in halves
+	private static class TransformTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final transient Block[] blocks;
+		private final int lo, hi;
+
+		TransformTask(Block[] blocks, int lo, int hi) {
+			this.blocks = blocks;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				Block block = blocks[lo];
+				block.first = BurrowsWheeler.transform(block.in, block.out);
+				block.in = null;
+			}
+			else if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new TransformTask(blocks, lo, mid), new TransformTask(blocks, mid, hi));
+			}
+		}
+	}
+
+	// decodes blocks lo..hi-1, splitting the range in halves
+	private static class InverseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final transient Block[] blocks;
+		private final int lo, hi;
+
+		InverseTask(Block[] blocks, int lo, int hi) {
+			this.blocks = blocks;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				Block block = blocks[lo];
+				BurrowsWheeler.inverseTransform(block.first, block.in, block.out);
+				block.in = null;
+			}
+			else if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new InverseTask(blocks, lo, mid), new InverseTask(blocks, mid, hi));
+			}
+		}
+	}
+
+	// if args[0] is '-', apply block Burrows-Wheeler transform
+	// if args[0] is '+', apply block Burrows-Wheeler inverse transform
+	// standard input/output:  - [blockSize]   or  +
+	// files (memory-mapped):  - in out [blockSize]   or  + in out
+	// if args[0] is 'r', write len bytes from position start of the original string:  r in start len
+	public static void main(String[] args) {
+		boolean files = args.length > 2;
+		if (args[0].equals("-")) {
+			int blockArg = files ? 3 : 1;
+			int blockSize = args.length > blockArg ? Integer.parseInt(args[blockArg]) : DEFAULT_BLOCK_SIZE;
+			if (files) transform(Paths.get(args[1]), Paths.get(args[2]), blockSize);
+			else transform(blockSize);
+		}
+		else if (args[0].equals("+")) {
+			if (files) inverseTransform(Paths.get(args[1]), Paths.get(args[2]));
+			else inverseTransform();
+		}
+		else if (args[0].equals("r")) {
+			byte[] range = decompressRange(Paths.get(args[1]), Long.parseLong(args[2]), Integer.parseInt(args[3]));
+			for (int i = 0; i < range.length; i++) {
+				BinaryStdOut.write(range[i]);
+			}
+			BinaryStdOut.flush();
+		}
+		else
+			throw new java.lang.IllegalArgumentException();
+	}
+}
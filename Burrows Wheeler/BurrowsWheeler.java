@@ -1,3 +1,7 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import edu.princeton.cs.algs4.BinaryStdIn;
 import edu.princeton.cs.algs4.BinaryStdOut;
 
@@ -5,10 +9,15 @@ import edu.princeton.cs.algs4.BinaryStdOut;
  * The Burrows–Wheeler transform is the last column in the sorted suffixes array
  * t[] of the original string, preceded by the row number first (the first
  * suffix index) in which the original string ends up.
- * 
+ *
  * The inverse transform is to recover the original string using first and t[].
  *
- * Dependency: CircularSuffixArray.java, BinaryStdIn.java, BinaryStdOut.java
+ * Both transforms work on 8-bit data: besides the standard input/output filters
+ * there are byte[] and ByteBuffer entry points, so the transform can be used
+ * without going through String/char[] (half the memory) or stdin/stdout.
+ *
+ * Dependency: CircularSuffixArraySAIS.java, SymbolKernels.java, BinaryStdIn.java,
+ * BinaryStdOut.java
  *
  * @author pkrastnikova
  *
@@ -23,90 +32,280 @@ public class BurrowsWheeler {
 	 * letters of sorted suffixes)
 	 */
 	public static void transform() {
-		String s = BinaryStdIn.readString();
+		byte[] s = readBytes();
+		byte[] t = new byte[s.length];
+		int first = transform(s, 0, s.length, t);
+
+		// output first and t[i]
+		BinaryStdOut.write(first);
+
+		for (int i = 0; i < t.length; i++) {
+			BinaryStdOut.write(t[i]);
+		}
+
+		BinaryStdOut.flush();
+
+	}
+
+	/**
+	 * Apply Burrows-Wheeler transform to len bytes of in[] starting at off
+	 * @param out receives t[0..len-1] (last letters of sorted suffixes)
+	 * @return first, the row in which the original string ends up
+	 * @throws IllegalArgumentException when an array is null, off/len are out of
+	 *         range or out is shorter than len
+	 */
+	public static int transform(byte[] in, int off, int len, byte[] out) {
+		if (in == null || out == null || off < 0 || len < 0 || off > in.length - len)
+			throw new java.lang.IllegalArgumentException();
+		if (out.length < len) throw new java.lang.IllegalArgumentException();
+		return transform(ByteBuffer.wrap(in, off, len), ByteBuffer.wrap(out));
+	}
+
+	/**
+	 * Apply Burrows-Wheeler transform to the remaining bytes of in, writing t[]
+	 * to out
+	 * Both buffers may be heap, direct or mapped; the input is read in place and
+	 * the positions of in and out are advanced past the bytes read and written
+	 * @return first, the row in which the original string ends up
+	 * @throws IllegalArgumentException when a buffer is null or out has less
+	 *         room than in has remaining
+	 */
+	public static int transform(ByteBuffer in, ByteBuffer out) {
+		if (in == null || out == null) throw new java.lang.IllegalArgumentException();
+		int n = in.remaining();
+		if (out.remaining() < n) throw new java.lang.IllegalArgumentException();
+		int base = in.position();
 
 		// Create an array of sorted suffixes of string s
-		CircularSuffixArray sf = new CircularSuffixArray(s);
+		// (induced sorting keeps this linear on repetitive input)
+		CircularSuffixArraySAIS sf = new CircularSuffixArraySAIS(in);
 
-		char t[] = new char[sf.length()];
 		int first = 0;
 
 		// fill in t[i] with last letter of i-th sorted suffix
-		for (int i = 0; i < sf.length(); i++) {
+		for (int i = 0; i < n; i++) {
 			if (sf.index(i) == 0) {
 				first = i;
-				t[i] = s.charAt(sf.length() - 1);
+				out.put(in.get(base + n - 1));
 			}
 
 			// if index[i] = 7, the last letter of that suffix will be the 7-th letter
 			// of the original string, with string index 6
 			else
-				t[i] = s.charAt(sf.index(i) - 1);
-		}
-
-		// output first and t[i]
-		BinaryStdOut.write(first);
-
-		for (int i = 0; i < sf.length(); i++) {
-			BinaryStdOut.write(t[i]);
+				out.put(in.get(base + sf.index(i) - 1));
 		}
-
-		BinaryStdOut.flush();
-
+		in.position(base + n);
+		return first;
 	}
 
 	/**
 	 * Apply Burrows-Wheeler inverse transform, reading from standard input and
 	 * writing to standard output given first and t[i] decode - recover the
 	 * original string s
-	 * 
+	 *
 	 * 1. Sort t[i] using key-indexed counting algorithm
 	 * 2. Construct next[i] using first and sorted t[i]
 	 * 3. Recover the original string using first and next[i]
 	 * The idea for finding next[i] - first letter in a sorted suffix appears last in t[i]
+	 * On large inputs the chain of next[i] is split into segments that are decoded
+	 * at the same time (see inverseTransform(int, ByteBuffer, ByteBuffer))
 	 */
 	public static void inverseTransform() {
-		int R = 256; // use extended ACSII code
 		int first = BinaryStdIn.readInt();
-		String s = BinaryStdIn.readString();
-		char[] t = s.toCharArray();
+		byte[] t = readBytes();
+		byte[] original = new byte[t.length];
+		inverseTransform(first, t, 0, t.length, original);
+
+		for (int i = 0; i < original.length; i++) {
+			BinaryStdOut.write(original[i]);
+		}
+
+		BinaryStdOut.flush();
+	}
+
+	/**
+	 * Recover the original string from first and len bytes of t[] starting at off
+	 * @param out receives the original string
+	 * @throws IllegalArgumentException when an array is null, off/len are out of
+	 *         range, out is shorter than len or first is not a valid row
+	 */
+	public static void inverseTransform(int first, byte[] in, int off, int len, byte[] out) {
+		if (in == null || out == null || off < 0 || len < 0 || off > in.length - len)
+			throw new java.lang.IllegalArgumentException();
+		if (out.length < len) throw new java.lang.IllegalArgumentException();
+		inverseTransform(first, ByteBuffer.wrap(in, off, len), ByteBuffer.wrap(out));
+	}
+
+	/**
+	 * Recover the original string from first and the remaining bytes of in (t[]),
+	 * writing it to out
+	 * The positions of in and out are advanced past the bytes read and written
+	 * @throws IllegalArgumentException when a buffer is null, out has less room
+	 *         than in has remaining or first is not a valid row
+	 */
+	public static void inverseTransform(int first, ByteBuffer in, ByteBuffer out) {
+		if (in == null || out == null) throw new java.lang.IllegalArgumentException();
+		int n = in.remaining();
+		if (out.remaining() < n) throw new java.lang.IllegalArgumentException();
+		if (n == 0) return;
+		if (first < 0 || first >= n) throw new java.lang.IllegalArgumentException();
+		int base = in.position();
+		int R = 256; // use extended ACSII code
 
 		// Sort t[i] array, using key-indexed algorithm in 3 steps:
 
 		// 1. Count how many times each letter appears in the string
 		int[] count = new int[R + 1];
-		for (int i = 0; i < t.length; i++) {
-			count[t[i] + 1]++;
-		}
+		System.arraycopy(KERNELS.histogram(in, base, base + n), 0, count, 1, R);
 
 		// 2. Find cumulative index
 		for (int i = 0; i < R; i++) {
 			count[i + 1] += count[i];
 		}
 
-		char[] aux = new char[t.length];
-		int[] next = new int[t.length];
-
 		// 3. Place at the exact index position
-		for (int i = 0; i < t.length; i++) {
-			char ch = t[i]; // current char in the unsorted t[i]
-			int index = count[t[i]]; // the new index in the sorted t[i]
-			aux[index] = ch;
-			next[index] = i; // next equals the position i of current char (ch)
-								// in unsorted t[i] array (it is the last in
-								// that suffix)
-			count[t[i]]++;
+		// aux[] and next[] are fused into one table, so each step of the
+		// decoding touches a single array entry:
+		// lf[index] = next << 9 | (next starts a stream ? 256 : 0) | ch
+		int streams = n < STREAM_THRESHOLD ? 1
+				: STREAMS * (n < PARALLEL_THRESHOLD ? 1 : ForkJoinPool.getCommonPoolParallelism());
+		int[] startRow = new int[streams];
+		java.util.BitSet starts = new java.util.BitSet(n);
+		for (int s = 0; s < streams; s++) {
+			startRow[s] = (int) ((first + (long) s * n / streams) % n);
+			starts.set(startRow[s]);
 		}
 
-		// Recover and output the original string, using first and next[i]
+		long[] lf = new long[n];
+		for (int i = 0; i < n; i++) {
+			int ch = in.get(base + i) & 0xFF; // current char in the unsorted t[i]
+			int index = count[ch]; // the new index in the sorted t[i]
+			// next equals the position i of current char (ch)
+			// in unsorted t[i] array (it is the last in that suffix)
+			lf[index] = ((long) i << 9) | (starts.get(i) ? START : 0) | ch;
+			count[ch]++;
+		}
+		in.position(base + n);
 
-		int k = first;
-		for (int i = 0; i < t.length; i++) {
-			BinaryStdOut.write(aux[k]);
-			k = next[k];
+		// Recover the original string, using first and next[i]
+
+		if (streams == 1) {
+			int k = first;
+			for (int i = 0; i < n; i++) {
+				long e = lf[k];
+				out.put((byte) e);
+				k = (int) (e >>> 9);
+			}
+			return;
 		}
 
-		BinaryStdOut.flush();
+		// Split the chain of next[] at the start rows and decode the segments
+		// between them in interleaved streams (several independent chains in
+		// flight hide the memory latency of each step); groups of streams run
+		// in parallel on large inputs
+		Segments segments = new Segments(lf, startRow, n);
+		if (streams == STREAMS) segments.decode(0, streams);
+		else ForkJoinPool.commonPool().invoke(new SegmentTask(segments, 0, streams));
+
+		// stitch the segments together, starting from the one that starts at first
+		int s = 0;
+		for (int i = 0; i < n; ) {
+			int length = Math.min(segments.length[s], n - i);
+			out.put(segments.data[s], 0, length);
+			i += length;
+			s = segments.streamOf(segments.endRow[s]);
+		}
+	}
+
+	private static final SymbolKernels KERNELS = SymbolKernels.get();
+	private static final int STREAMS = 8; // interleaved streams per task
+	private static final int STREAM_THRESHOLD = 1 << 16; // min length for streams
+	private static final int PARALLEL_THRESHOLD = 1 << 22; // min length for parallel tasks
+	private static final long START = 256; // flag in lf[]: next row starts a stream
+
+	// segments of the original string between consecutive start rows
+	private static class Segments {
+		private final long[] lf;
+		private final int[] startRow; // row where each stream starts
+		private final int[] endRow; // start row of the segment that follows
+		private final byte[][] data;
+		private final int[] length;
+
+		Segments(long[] lf, int[] startRow, int n) {
+			this.lf = lf;
+			this.startRow = startRow;
+			this.endRow = new int[startRow.length];
+			this.data = new byte[startRow.length][];
+			this.length = new int[startRow.length];
+			for (int s = 0; s < startRow.length; s++) {
+				data[s] = new byte[2 * (n / startRow.length) + 16];
+			}
+		}
+
+		// decode streams lo..hi-1 in lockstep, one step of each stream per round
+		void decode(int lo, int hi) {
+			int[] row = new int[hi - lo];
+			for (int s = lo; s < hi; s++) {
+				row[s - lo] = startRow[s];
+			}
+			int active = hi - lo;
+			while (active > 0) {
+				for (int s = lo; s < hi; s++) {
+					int k = row[s - lo];
+					if (k < 0) continue;
+					long e = lf[k];
+					if (length[s] == data[s].length) data[s] = java.util.Arrays.copyOf(data[s], 2 * length[s]);
+					data[s][length[s]++] = (byte) e;
+					int next = (int) (e >>> 9);
+					if ((e & START) != 0) {
+						endRow[s] = next;
+						row[s - lo] = -1;
+						active--;
+					}
+					else row[s - lo] = next;
+				}
+			}
+		}
+
+		// the stream that starts at the given start row
+		int streamOf(int row) {
+			for (int s = 0; ; s++) {
+				if (startRow[s] == row) return s;
+			}
+		}
+	}
+
+	// decodes streams lo..hi-1, STREAMS at a time, splitting the range in halves
+	private static class SegmentTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final transient Segments segments;
+		private final int lo, hi;
+
+		SegmentTask(Segments segments, int lo, int hi) {
+			this.segments = segments;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= STREAMS) segments.decode(lo, hi);
+			else {
+				int mid = lo + Math.max(STREAMS, (hi - lo) / 2 / STREAMS * STREAMS);
+				invokeAll(new SegmentTask(segments, lo, mid), new SegmentTask(segments, mid, hi));
+			}
+		}
+	}
+
+	// read all remaining bytes of standard input
+	private static byte[] readBytes() {
+		byte[] buffer = new byte[1 << 16];
+		int n = 0;
+		while (!BinaryStdIn.isEmpty()) {
+			if (n == buffer.length) buffer = java.util.Arrays.copyOf(buffer, 2 * n);
+			buffer[n++] = BinaryStdIn.readByte();
+		}
+		return java.util.Arrays.copyOf(buffer, n);
 	}
 
 	// if args[0] is '-', apply Burrows-Wheeler transform
@@ -0,0 +1,174 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Input stream that decompresses the frames written by BwtOutputStream (or
+ * java Compressor -)
+ *
+ *   int length | length bytes of the compressed block
+ *
+ * Frames are read ahead of the caller and decompressed on a background executor:
+ * while the caller reads one block, up to maxInFlight following blocks are
+ * being decoded, so memory is bounded by about (maxInFlight + 1) blocks.
+ *
+ * Dependency: Compressor.java, BwtOutputStream.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class BwtInputStream extends FilterInputStream {
+	private static final byte[] EMPTY = new byte[0];
+
+	private final Compressor compressor;
+	private final Executor executor;
+	private final int maxInFlight;
+	private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>(); // in input order
+	private final DataInputStream data;
+	private byte[] block = EMPTY; // the block being read
+	private int position; // next byte of block
+	private boolean eof; // no more frames in the underlying stream
+	private boolean closed;
+
+	/**
+	 * Decompresses in with the default pipeline on the common pool
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public BwtInputStream(InputStream in) {
+		this(in, new Compressor(), ForkJoinPool.commonPool(), BwtOutputStream.DEFAULT_IN_FLIGHT);
+	}
+
+	/**
+	 * Decompresses in with compressor on executor
+	 * @param maxInFlight maximum number of blocks being decompressed at a time
+	 * @throws IllegalArgumentException when an argument is null or maxInFlight
+	 *         is not positive
+	 */
+	public BwtInputStream(InputStream in, Compressor compressor, Executor executor, int maxInFlight) {
+		super(in);
+		if (in == null || compressor == null || executor == null || maxInFlight <= 0)
+			throw new java.lang.IllegalArgumentException();
+		this.compressor = compressor;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		this.data = new DataInputStream(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) return -1;
+		return block[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		java.util.Objects.checkFromIndexSize(off, len, b.length);
+		if (len == 0) return 0;
+		if (!fill()) return -1;
+		int n = Math.min(len, block.length - position);
+		System.arraycopy(block, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && fill()) {
+			int k = (int) Math.min(n - skipped, block.length - position);
+			position += k;
+			skipped += k;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of decompressed bytes left in the current block
+	 */
+	@Override
+	public int available() throws IOException {
+		ensureOpen();
+		return block.length - position;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		for (Future<byte[]> pending : inFlight) {
+			pending.cancel(false);
+		}
+		inFlight.clear();
+		block = EMPTY;
+		in.close();
+	}
+
+	// makes sure there is a byte to read in block, returns false at the end of the stream
+	private boolean fill() throws IOException {
+		ensureOpen();
+		while (position == block.length) {
+			readAhead();
+			if (inFlight.isEmpty()) return false;
+			block = BwtOutputStream.await(inFlight.remove());
+			position = 0;
+		}
+		return true;
+	}
+
+	// reads frames and starts decompressing them, up to maxInFlight blocks
+	private void readAhead() throws IOException {
+		while (!eof && inFlight.size() < maxInFlight) {
+			int b = in.read();
+			if (b < 0) {
+				eof = true;
+				return;
+			}
+			int length;
+			try {
+				length = (b << 24) | (data.readUnsignedByte() << 16) | (data.readUnsignedShort());
+			}
+			catch (EOFException e) {
+				throw new EOFException("truncated frame header");
+			}
+			if (length < 0) throw new IOException("invalid frame length " + length);
+			final byte[] frame = new byte[length];
+			data.readFully(frame);
+			FutureTask<byte[]> task = new FutureTask<byte[]>(() -> compressor.decompress(frame));
+			executor.execute(task);
+			inFlight.add(task);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("stream closed");
+	}
+
+	// decompress standard input to standard output (same output as java Compressor +)
+	public static void main(String[] args) throws IOException {
+		try (BwtInputStream in = new BwtInputStream(new java.io.BufferedInputStream(System.in))) {
+			in.transferTo(System.out);
+		}
+		System.out.flush();
+	}
+}
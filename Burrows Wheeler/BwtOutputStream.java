@@ -0,0 +1,170 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Output stream that compresses the bytes written to it with a Compressor
+ * (Burrows-Wheeler transform -> move-to-front -> zero-run encoding -> Huffman)
+ *
+ * The bytes are collected into blocks of blockSize bytes; every full block is
+ * compressed on a background executor while the caller keeps writing the next
+ * one. At most maxInFlight blocks are being compressed at a time: when the limit
+ * is reached, write() waits for the oldest block and writes its frame, so memory
+ * is bounded by about (maxInFlight + 1) * blockSize however long the stream is.
+ *
+ * The frames are written in input order, in the format of Compressor:
+ *
+ *   int length | length bytes of the compressed block
+ *
+ * so the output can be read back with BwtInputStream or java Compressor +.
+ * flush() compresses the partial block and writes all pending frames; calling
+ * it often makes small blocks, which compress worse.
+ *
+ * Dependency: Compressor.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class BwtOutputStream extends FilterOutputStream {
+	static final int DEFAULT_IN_FLIGHT = Math.max(2, ForkJoinPool.getCommonPoolParallelism());
+
+	private final Compressor compressor;
+	private final Executor executor;
+	private final int maxInFlight;
+	private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>(); // in output order
+	private final byte[] header = new byte[4];
+	private final byte[] buffer; // the block being filled
+	private int count; // number of bytes in buffer
+	private boolean closed;
+
+	/**
+	 * Compresses to out with the default pipeline and block size on the common pool
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public BwtOutputStream(OutputStream out) {
+		this(out, new Compressor(), Compressor.DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool(), DEFAULT_IN_FLIGHT);
+	}
+
+	/**
+	 * Compresses to out with compressor, in blocks of blockSize bytes on executor
+	 * @param maxInFlight maximum number of blocks being compressed at a time
+	 * @throws IllegalArgumentException when an argument is null, or blockSize or
+	 *         maxInFlight is not positive
+	 */
+	public BwtOutputStream(OutputStream out, Compressor compressor, int blockSize, Executor executor, int maxInFlight) {
+		super(out);
+		if (out == null || compressor == null || executor == null || blockSize <= 0 || maxInFlight <= 0)
+			throw new java.lang.IllegalArgumentException();
+		this.compressor = compressor;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		this.buffer = new byte[blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		buffer[count++] = (byte) b;
+		if (count == buffer.length) dispatch();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		java.util.Objects.checkFromIndexSize(off, len, b.length);
+		ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == buffer.length) dispatch();
+		}
+	}
+
+	/**
+	 * Compresses the partial block, writes the frames of all blocks written so
+	 * far and flushes the underlying stream
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (count > 0) dispatch();
+		while (!inFlight.isEmpty()) {
+			writeFrame(inFlight.remove());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Flushes and closes the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		try {
+			flush();
+		}
+		finally {
+			closed = true;
+			for (Future<byte[]> block : inFlight) {
+				block.cancel(false);
+			}
+			inFlight.clear();
+			out.close();
+		}
+	}
+
+	// starts compressing the buffered block, first writing the oldest frames
+	// when maxInFlight blocks are already being compressed
+	private void dispatch() throws IOException {
+		while (inFlight.size() >= maxInFlight) {
+			writeFrame(inFlight.remove());
+		}
+		final byte[] block = java.util.Arrays.copyOf(buffer, count);
+		count = 0;
+		FutureTask<byte[]> task = new FutureTask<byte[]>(() -> compressor.compress(block, 0, block.length));
+		executor.execute(task);
+		inFlight.add(task);
+	}
+
+	private void writeFrame(Future<byte[]> block) throws IOException {
+		byte[] frame = await(block);
+		Compressor.writeInt(header, 0, frame.length);
+		out.write(header);
+		out.write(frame);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("stream closed");
+	}
+
+	// result of a block task, with its failure as an IOException
+	static byte[] await(Future<byte[]> block) throws IOException {
+		try {
+			return block.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	// compress standard input to standard output (same output as java Compressor -)
+	public static void main(String[] args) throws IOException {
+		try (BwtOutputStream out = new BwtOutputStream(new java.io.BufferedOutputStream(System.out))) {
+			System.in.transferTo(out);
+		}
+	}
+}
@@ -0,0 +1,195 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flow variant of BwtOutputStream/BwtInputStream: a processor that subscribes
+ * to a publisher of byte[] chunks and publishes them compressed (or
+ * decompressed) block by block
+ *
+ * - compressing(): chunks of any size are collected into blocks of blockSize
+ *   bytes; each item published is one frame (int length | compressed block), so
+ *   the items concatenated are the output of BwtOutputStream
+ * - decompressing(): chunks of any size are split into frames again; each item
+ *   published is one decompressed block
+ *
+ * Blocks are transformed on a background executor and published in input order.
+ * Backpressure works both ways: the processor requests the next chunk only
+ * while fewer than maxInFlight blocks are being transformed, and publishing a
+ * block waits (SubmissionPublisher.submit) while the subscribers' buffers are
+ * full, which holds back the blocks behind it and so the requests upstream.
+ *
+ * Dependency: Compressor.java, BwtOutputStream.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class BwtProcessor extends SubmissionPublisher<byte[]> implements Flow.Processor<byte[], byte[]> {
+	private final Compressor compressor;
+	private final Executor executor;
+	private final boolean compress;
+	private final int maxInFlight;
+	private final AtomicInteger inFlight = new AtomicInteger(); // blocks not yet published
+	private final AtomicBoolean waiting = new AtomicBoolean(); // a request is due when a block is published
+	private Flow.Subscription subscription;
+	private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null); // last block published
+
+	// the block being collected (the frame being collected when decompressing)
+	private byte[] buffer;
+	private int count;
+	private boolean frame; // buffer holds a frame, not a header, when decompressing
+
+	private BwtProcessor(Compressor compressor, Executor executor, boolean compress, int blockSize, int maxInFlight) {
+		super(executor, Flow.defaultBufferSize());
+		if (compressor == null || blockSize <= 0 || maxInFlight <= 0) throw new java.lang.IllegalArgumentException();
+		this.compressor = compressor;
+		this.executor = executor;
+		this.compress = compress;
+		this.maxInFlight = maxInFlight;
+		this.buffer = new byte[compress ? blockSize : 4];
+	}
+
+	/**
+	 * Compressing processor with the default pipeline and block size on the common pool
+	 */
+	public static BwtProcessor compressing() {
+		return compressing(new Compressor(), Compressor.DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool(),
+				BwtOutputStream.DEFAULT_IN_FLIGHT);
+	}
+
+	/**
+	 * Compressing processor: publishes one frame per block of blockSize bytes
+	 * @param maxInFlight maximum number of blocks being compressed at a time
+	 * @throws IllegalArgumentException when an argument is null, or blockSize or
+	 *         maxInFlight is not positive
+	 */
+	public static BwtProcessor compressing(Compressor compressor, int blockSize, Executor executor, int maxInFlight) {
+		if (executor == null) throw new java.lang.IllegalArgumentException();
+		return new BwtProcessor(compressor, executor, true, blockSize, maxInFlight);
+	}
+
+	/**
+	 * Decompressing processor with the default pipeline on the common pool
+	 */
+	public static BwtProcessor decompressing() {
+		return decompressing(new Compressor(), ForkJoinPool.commonPool(), BwtOutputStream.DEFAULT_IN_FLIGHT);
+	}
+
+	/**
+	 * Decompressing processor: publishes one decompressed block per frame
+	 * @param maxInFlight maximum number of blocks being decompressed at a time
+	 * @throws IllegalArgumentException when an argument is null or maxInFlight
+	 *         is not positive
+	 */
+	public static BwtProcessor decompressing(Compressor compressor, Executor executor, int maxInFlight) {
+		if (executor == null) throw new java.lang.IllegalArgumentException();
+		return new BwtProcessor(compressor, executor, false, 1, maxInFlight);
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	@Override
+	public void onNext(byte[] chunk) {
+		int off = 0;
+		while (off < chunk.length && !isClosed()) {
+			int n = Math.min(chunk.length - off, buffer.length - count);
+			System.arraycopy(chunk, off, buffer, count, n);
+			count += n;
+			off += n;
+			if (count == buffer.length) collected();
+		}
+
+		// request the next chunk now, or when a block is published
+		waiting.set(true);
+		requestIfReady();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		closeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		if (!compress && (frame || count > 0)) {
+			closeExceptionally(new java.io.EOFException("truncated frame"));
+			return;
+		}
+		if (compress && count > 0) dispatch(java.util.Arrays.copyOf(buffer, count));
+		tail.whenComplete((v, e) -> {
+			if (e == null) close();
+		});
+	}
+
+	// buffer is full: a block when compressing, a header or a frame when decompressing
+	private void collected() {
+		if (compress) {
+			dispatch(buffer.clone());
+			count = 0;
+		}
+		else if (!frame) {
+			int length = Compressor.readInt(buffer, 0);
+			if (length < 0) {
+				subscription.cancel();
+				closeExceptionally(new java.io.IOException("invalid frame length " + length));
+				count = 0;
+				return;
+			}
+			buffer = new byte[length];
+			count = 0;
+			frame = true;
+			if (length == 0) collected();
+		}
+		else {
+			dispatch(buffer);
+			buffer = new byte[4];
+			count = 0;
+			frame = false;
+		}
+	}
+
+	// transforms a block on the executor and publishes it after the previous ones
+	private void dispatch(byte[] block) {
+		inFlight.incrementAndGet();
+		CompletableFuture<byte[]> result = CompletableFuture.supplyAsync(
+				() -> compress ? frame(compressor.compress(block, 0, block.length)) : compressor.decompress(block),
+				executor);
+		tail = tail.thenCombine(result, (v, item) -> {
+			submit(item); // waits while the subscribers' buffers are full
+			return (Void) null;
+		}).whenComplete((v, e) -> {
+			if (e != null) {
+				subscription.cancel();
+				closeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+			}
+			inFlight.decrementAndGet();
+			requestIfReady();
+		});
+	}
+
+	// requests the next chunk if one is due and fewer than maxInFlight blocks are pending
+	private void requestIfReady() {
+		if (inFlight.get() < maxInFlight && waiting.compareAndSet(true, false)) subscription.request(1);
+	}
+
+	// int length | compressed block
+	private static byte[] frame(byte[] block) {
+		byte[] frame = new byte[4 + block.length];
+		Compressor.writeInt(frame, 0, block.length);
+		System.arraycopy(block, 0, frame, 4, block.length);
+		return frame;
+	}
+}
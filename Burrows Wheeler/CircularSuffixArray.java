@@ -7,37 +7,73 @@
  * suffix) - suffixes that start with letter less than d move before the first suffix;
  * suffixes that start with letter bigger than d go after first suffix
  * those that start with same letter go next to current suffix
- * then recursively sort each partition using the same rule
+ * then sort each partition using the same rule
+ *
+ * The sort is hardened against degenerate (very repetitive) input:
+ * - partitions wait on an explicit work stack instead of the call stack, so
+ *   long common prefixes cannot overflow the stack
+ * - the partitioning character is the median of the first, middle and last suffix
+ * - partitions smaller than CUTOFF are finished by insertion sort
+ * - when d grows past DEPTH_LIMIT the partition is finished using the ranks
+ *   of CircularSuffixArraySAIS (computed once, in linear time), whatever its size
+ * - insertion sort compares characters up to DEPTH_LIMIT only and breaks ties
+ *   past that depth with the same ranks
+ * so no suffix is read further than DEPTH_LIMIT characters, which keeps the
+ * total time O(N * DEPTH_LIMIT) in the worst case instead of O(N^2)
 */
 
 public class CircularSuffixArray {
 	   private int N; // number of suffixes
 	   private int indices []; //array with int references to each suffix
-	   private String s;
+	   private byte[] text; // 8-bit characters of the string
+	   private int offset; // index of the first character in text
+	   private static final int CUTOFF = 15; // insertion sort for smaller partitions
+	   private static final int DEPTH_LIMIT = 64; // max d before the induced sort fallback
+	   private int stack []; // pending partitions as (lo, hi, d) triples
+	   private int top; // number of ints in stack
+	   private int rank []; // rank of each suffix, computed on first fallback
+	   private CircularSuffixArraySAIS induced;
+	   private final SuffixSortStats stats = new SuffixSortStats();
 	
 	   public CircularSuffixArray(String s) {   
-	      if (s == null) throw new java.lang.IllegalArgumentException();
-		  N = s.length();	   
+	      this(bytes(s), 0, s.length());
+	   }
+	   
+	   /**
+	    * Circular suffix array of len bytes of a[] starting at off
+	    * @throws IllegalArgumentException when a is null or off/len are out of range
+	    */
+	   public CircularSuffixArray(byte[] a, int off, int len) {
+	      if (a == null || off < 0 || len < 0 || off > a.length - len) throw new java.lang.IllegalArgumentException();
+		  N = len;	   
 		  indices = new int[N];
 		   
 		   // Initialize the index array
 		  for (int i = 0; i < N; i++){
 			  indices[i] = i;
-			  System.out.print(indices[i]);
 		   }
-		  System.out.println();
-		  this.s = s;
+		  this.text = a;
+		  this.offset = off;
 		   
-		  sort(0, N-1, 0);
+		  long start = SuffixSortStats.ENABLED ? System.nanoTime() : 0;
+		  sort();
+		  if (SuffixSortStats.ENABLED) stats.phase("sort", start);
 		   
 	   }
 	   
+	   // 8-bit (extended ASCII) characters of s, as read by BinaryStdIn
+	   private static byte[] bytes(String s) {
+	      if (s == null) throw new java.lang.IllegalArgumentException();
+	      return s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+	   }
+	   
 	   // Find d-th character in a suffix; returns corresponding Ascii code
 	   // Example: "book" - suffix starting from k will be "kboo", its index is 3
 	   // findD(3, 1) = "b"; findD(3, 2) = "o"
 	   private int findD(int suffixIndex, int d) {
-	       if (d == s.length()) return -1;
-		   return (s.charAt((suffixIndex+d) % N));
+	       if (SuffixSortStats.ENABLED) stats.charRead();
+	       if (d == N) return -1;
+		   return text[offset + (suffixIndex+d) % N] & 0xFF;
 	   }
 	   
 	   // exchange 2 elements in indices array   
@@ -48,47 +84,125 @@ public class CircularSuffixArray {
 	   }
 	   
 	   // core sorting method
-	   private void sort(int lo, int hi, int d) {  
-	       System.out.print("lo: " + lo);
-	       System.out.print(" hi: " + hi);
-	       System.out.println(" d: " + d);
-		   if (hi <= lo || hi < 0) return; 
+	   private void sort() {
+	       stack = new int[3 * 64];
+	       top = 0;
+	       push(0, N-1, 0);
 	       
-	        int lt = lo, gt = hi;
-	        int v = findD(indices[lo], d); 
-	        System.out.println("v: " + (char)v);
-	        int i = lo + 1;
-	        
-	        // partition by d-th char
-	        while (i <= gt) { 
-	            int t = findD(indices[i], d); 
-	            System.out.println("t: " + (char)t);
-	            if (t < v) exch(lt++, i++);
-	            else if (t > v) exch(i, gt--); 
-	            else i++; 
-	        } 
-	        for (int k = 0; k< N; k++){
-	        	System.out.print(indices[k] + " ");
-	        }
-	        System.out.println();
-	       
-	        // recursively sort each partition
-	        System.out.print("lo: " + lo);
-	        System.out.print(" lt: " + lt);
-	        System.out.println();
-	        System.out.println();
-	        
-	        sort(lo, lt-1, d);
-	        System.out.println("Sort1 completed: " + lo + (lt-1) +  d);
-	        System.out.println();
-	        
-	        if (v >= 0) sort(lt, gt, d+1); 
-	        System.out.println("Sort2 completed: " + lt + gt +  d+1);
-	       
-	        sort(gt+1, hi, d); 
-	        System.out.println("Sort3 completed: " + (gt+1) + hi +  d);
-	        
-	    } 
+	       while (top > 0) {
+	           int d = stack[--top];
+	           int hi = stack[--top];
+	           int lo = stack[--top];
+	           if (hi <= lo) continue;
+	           if (SuffixSortStats.ENABLED) {
+	               stats.partition(hi - lo + 1);
+	               stats.depth(d);
+	           }
+	           if (d > DEPTH_LIMIT) {
+	               sortByRank(lo, hi);
+	               continue;
+	           }
+	           if (hi - lo < CUTOFF) {
+	               insertion(lo, hi, d);
+	               continue;
+	           }
+	           
+	           median3(lo, hi, d);
+	           int lt = lo, gt = hi;
+	           int v = findD(indices[lo], d); 
+	           int i = lo + 1;
+	           
+	           // partition by d-th char
+	           while (i <= gt) { 
+	               int t = findD(indices[i], d); 
+	               if (t < v) exch(lt++, i++);
+	               else if (t > v) exch(i, gt--); 
+	               else i++; 
+	           } 
+	           
+	           // sort each partition later
+	           push(lo, lt-1, d);
+	           if (v >= 0) push(lt, gt, d+1); 
+	           push(gt+1, hi, d); 
+	       }
+	       stack = null;
+	       rank = null;
+	       induced = null;
+	   }
+	   
+	   // add partition lo..hi, sorted from d-th character, to the work stack
+	   private void push(int lo, int hi, int d) {
+	       if (top + 3 > stack.length) stack = java.util.Arrays.copyOf(stack, 2 * stack.length);
+	       stack[top++] = lo;
+	       stack[top++] = hi;
+	       stack[top++] = d;
+	   }
+	   
+	   // move the suffix with the median d-th character of lo, mid, hi to lo
+	   private void median3(int lo, int hi, int d) {
+	       int mid = lo + (hi - lo) / 2;
+	       int a = findD(indices[lo], d), b = findD(indices[mid], d), c = findD(indices[hi], d);
+	       if ((a <= b && b <= c) || (c <= b && b <= a)) exch(lo, mid);
+	       else if ((a <= c && c <= b) || (b <= c && c <= a)) exch(lo, hi);
+	   }
+	   
+	   // insertion sort of suffixes lo..hi that are equal in their first d characters
+	   private void insertion(int lo, int hi, int d) {
+	       for (int i = lo + 1; i <= hi; i++) {
+	           for (int j = i; j > lo && less(indices[j], indices[j-1], d); j--) {
+	               exch(j, j-1);
+	           }
+	       }
+	   }
+	   
+	   // is suffix x less than suffix y, comparing from d-th character up to
+	   // DEPTH_LIMIT, then by rank
+	   private boolean less(int x, int y, int d) {
+	       if (SuffixSortStats.ENABLED) stats.compare();
+	       int limit = Math.min(N, DEPTH_LIMIT + 1);
+	       for (int k = d; k < limit; k++) {
+	           int a = findD(x, k), b = findD(y, k);
+	           if (a != b) return a < b;
+	       }
+	       if (limit == N) return false;
+	       rank();
+	       return rank[x] < rank[y];
+	   }
+	   
+	   // sort suffixes lo..hi (equal in their first d characters) by their rank 
+	   // in the induced suffix array
+	   private void sortByRank(int lo, int hi) {
+	       rank();
+	       int[] ranks = new int[hi - lo + 1];
+	       for (int k = lo; k <= hi; k++) {
+	           ranks[k - lo] = rank[indices[k]];
+	       }
+	       java.util.Arrays.sort(ranks);
+	       for (int k = lo; k <= hi; k++) {
+	           indices[k] = induced.index(ranks[k - lo]);
+	       }
+	   }
+	   
+	   // compute the rank of each suffix in the induced suffix array, once
+	   private void rank() {
+	       if (rank != null) return;
+	       long start = SuffixSortStats.ENABLED ? System.nanoTime() : 0;
+	       induced = new CircularSuffixArraySAIS(text, offset, N);
+	       rank = new int[N];
+	       for (int r = 0; r < N; r++) {
+	           rank[induced.index(r)] = r;
+	       }
+	       if (SuffixSortStats.ENABLED) stats.phase("induced fallback", start);
+	   }
+	   
+	   /**
+	    * Returns the counters and timings of the sort
+	    * (all zeros unless run with -Dsuffixsort.stats=true)
+	    * @return stats
+	    */
+	   public SuffixSortStats stats() {
+		   return stats;
+	   }
 	   
 	   // return the length of suffix array
 	   public int length() {                    
@@ -113,5 +227,6 @@ public class CircularSuffixArray {
 		   System.out.println(sf.index(0));
 		   System.out.println(sf.index(1));
 		   System.out.println(sf.index(5));
+		   System.out.println(sf.stats());
 	   }
 }
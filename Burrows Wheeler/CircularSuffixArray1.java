@@ -21,12 +21,22 @@ public class CircularSuffixArray1 {
    private int N;
    private int indices [];
    private int R = 256;
-   private String s;
+   private byte[] text; // 8-bit characters of the string
+   private int offset; // index of the first character in text
    private int count [];   
+   private final SuffixSortStats stats = new SuffixSortStats();
 	
    public CircularSuffixArray1(String s) {    // circular suffix array of s
-       if (s == null) throw new java.lang.IllegalArgumentException();
-	   N = s.length();
+       this(bytes(s), 0, s.length());
+   }
+
+   /**
+    * Circular suffix array of len bytes of a[] starting at off
+    * @throws IllegalArgumentException when a is null or off/len are out of range
+    */
+   public CircularSuffixArray1(byte[] a, int off, int len) {
+       if (a == null || off < 0 || len < 0 || off > a.length - len) throw new java.lang.IllegalArgumentException();
+	   N = len;
 	   indices = new int[N];
 	   
 	   // initialize indices - use reference to suffixes
@@ -34,33 +44,51 @@ public class CircularSuffixArray1 {
 	   for (int i = 0; i < N; i++){
 		   indices[i] = i;
 	   }
-	   this.s = s;
+	   this.text = a;
+	   this.offset = off;
 	   count = new int[R+1];
+	   long start = SuffixSortStats.ENABLED ? System.nanoTime() : 0;
 	  
 	   // count occurrences
        for (int i = 0; i < N; i++) {
-           count[s.charAt(i)+1] ++;     
+           count[(text[offset+i] & 0xFF)+1] ++;     
        }
        
        // cumulative count
        for (int r1 = 0; r1 < R; r1++) {
            count[r1+1]+=count[r1];    
        }
+       if (SuffixSortStats.ENABLED) {
+           stats.phase("count", start);
+           start = System.nanoTime();
+       }
        
        // start sorting by last letter of each suffix
        // then by second last and so forth to the first
        for (int d = N-1; d >= 0; d--) {
 		   sort(d);
 	   }
+       if (SuffixSortStats.ENABLED) stats.phase("sort", start);
+   }
+   
+   // 8-bit (extended ASCII) characters of s, as read by BinaryStdIn
+   private static byte[] bytes(String s) {
+       if (s == null) throw new java.lang.IllegalArgumentException();
+       return s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
    }
    
    // find d-th character in a suffix
-   private char findD(int suffixIndex, int d) {
-	   return (s.charAt((suffixIndex+d) % N));
+   private int findD(int suffixIndex, int d) {
+	   if (SuffixSortStats.ENABLED) stats.charRead();
+	   return text[offset + (suffixIndex+d) % N] & 0xFF;
    }
    
    // sort by d-th character
    private void sort(int d) {   
+       if (SuffixSortStats.ENABLED) {
+           stats.partition(N);
+           stats.depth(N - d);
+       }
        int aux[] = new int [N];
 	   int tempCount [] = new int[R+1];
 	   
@@ -70,7 +98,7 @@ public class CircularSuffixArray1 {
 	 
 	   for (int i = 0; i < N; i++) {
 	       int index = indices[i];
-	       char ch = findD(index, d);
+	       int ch = findD(index, d);
 	   	   aux[tempCount[ch]] = index;
 	   	   tempCount[ch]++;
 	   	   
@@ -78,12 +106,15 @@ public class CircularSuffixArray1 {
 	   for (int i = 0; i < N; i++){
 	       indices[i] = aux[i];
 	   }
-	   /*System.out.println("d: " + d);
-	   for (int i = 0; i < N; i++){
-           System.out.print(indices[i]+ " ");
-       }
-	   System.out.println();
-	   */
+   }
+   
+   /**
+    * Returns the counters and timings of the sort
+    * (all zeros unless run with -Dsuffixsort.stats=true)
+    * @return stats
+    */
+   public SuffixSortStats stats() {
+	   return stats;
    }
    
    // returns length of string s
@@ -106,5 +137,6 @@ public class CircularSuffixArray1 {
         }
 	   System.out.println();
 	   System.out.println(sf.index(2));
+	   System.out.println(sf.stats());
    }
 }
@@ -0,0 +1,280 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Fourth variant of CircularSuffixArray using prefix doubling
+
+/**
+ * Sort an array of circular suffixes of a string by prefix doubling (Manber-Myers)
+ *
+ * After round k every suffix has a class (rank) such that two suffixes have the
+ * same class if and only if their first 2^k characters are equal:
+ * 1. Round 0 - sort the suffixes by their first character with key-indexed counting
+ * 2. Round k+1 - the first 2^(k+1) characters of suffix i are the pair
+ * (class[i], class[i + 2^k]). The order by the second item is known from the
+ * previous round (shift the sorted suffixes back by 2^k), so one stable
+ * key-indexed counting pass by the first item sorts the pairs
+ * 3. Stop when every suffix has its own class or 2^k >= N
+ * A class is sorted 16 bits at a time: one counting pass while there are at most
+ * 2^16 classes, then two (low and high half, the first into the spare class array).
+ * This takes O(N log N) time for any input, with about 4N ints of memory.
+ *
+ * The passes of every round run in parallel on a ForkJoinPool: the input is
+ * split into one chunk per worker, each chunk counts its keys, the counts are
+ * turned into per-chunk start indices (in parallel, one block of keys per task)
+ * and each chunk places its suffixes, which keeps the counting sort stable.
+ * The per-chunk counts take 2^16 ints per chunk, allocated once, so small inputs
+ * are sorted on the calling thread.
+ *
+ * @author pkrastnikova
+ *
+ */
+
+public class CircularSuffixArrayDoubling {
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 16; // min chunk size
+	private static final int RADIX_BITS = 16; // bits of a class sorted by one counting pass
+	private int N; // number of suffixes
+	private int indices[]; // array with int references to each suffix
+	private final ForkJoinPool pool;
+	private final int chunks; // number of chunks sorted in parallel
+	private final int[][] count; // count[j][r] - counts of chunk j, reused by every pass
+
+	public CircularSuffixArrayDoubling(String s) {
+		this(bytes(s), 0, s.length());
+	}
+
+	/**
+	 * Circular suffix array of len bytes of a[] starting at off, sorted on the
+	 * common pool
+	 * @throws IllegalArgumentException when a is null or off/len are out of range
+	 */
+	public CircularSuffixArrayDoubling(byte[] a, int off, int len) {
+		this(a, off, len, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Circular suffix array of len bytes of a[] starting at off, sorted on pool
+	 * @throws IllegalArgumentException when a or pool is null or off/len are out of range
+	 */
+	public CircularSuffixArrayDoubling(byte[] a, int off, int len, ForkJoinPool pool) {
+		if (a == null || pool == null || off < 0 || len < 0 || off > a.length - len)
+			throw new java.lang.IllegalArgumentException();
+		N = len;
+		indices = new int[N];
+		this.pool = pool;
+		this.chunks = Math.max(1, Math.min(pool.getParallelism(), N / SEQUENTIAL_THRESHOLD));
+		this.count = new int[chunks][Math.min(1 << RADIX_BITS, Math.max(N, 256))];
+		if (N == 0) return;
+
+		int[] p = indices; // suffixes in sorted order
+		int[] c = new int[N]; // class of each suffix
+		int[] pn = new int[N];
+		int[] cn = new int[N];
+
+		// round 0 - sort by the first character
+		for (int i = 0; i < N; i++) {
+			c[i] = a[off + i] & 0xFF;
+			pn[i] = i;
+		}
+		countingSort(pn, p, c, 0, -1, 256);
+		int classes = classify(p, c, cn, pn, 0);
+		int[] swap = c;
+		c = cn;
+		cn = swap;
+
+		// double the length of the sorted prefixes each round
+		for (int h = 1; classes < N && h < N; h <<= 1) {
+			final int shift = h;
+			final int[] sorted = p, shifted = pn;
+			forEachChunk((lo, hi) -> {
+				for (int i = lo; i < hi; i++) {
+					int j = sorted[i] - shift;
+					shifted[i] = j < 0 ? j + N : j;
+				}
+			});
+			radixSort(pn, p, cn, c, classes);
+			classes = classify(p, c, cn, pn, h);
+			swap = c;
+			c = cn;
+			cn = swap;
+		}
+	}
+
+	// 8-bit (extended ASCII) characters of s, as read by BinaryStdIn
+	private static byte[] bytes(String s) {
+		if (s == null) throw new java.lang.IllegalArgumentException();
+		return s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+	// stable LSD radix sort of src[] into dst[] by key[src[i]] (0..R-1), RADIX_BITS
+	// bits per pass; tmp[] holds the suffixes between the two passes
+	private void radixSort(int[] src, int[] dst, int[] tmp, int[] key, int R) {
+		int radix = count[0].length;
+		if (R <= radix) countingSort(src, dst, key, 0, -1, R);
+		else {
+			countingSort(src, tmp, key, 0, radix - 1, radix);
+			countingSort(tmp, dst, key, RADIX_BITS, -1, ((R - 1) >>> RADIX_BITS) + 1);
+		}
+	}
+
+	// stable key-indexed counting sort of src[] into dst[] by the digit
+	// (key[src[i]] >>> shift) & mask (0..R-1)
+	private void countingSort(int[] src, int[] dst, int[] key, int shift, int mask, int R) {
+		// count[j][r] - number of digits r in chunk j, then the index where chunk j puts its next r
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int j = lo; j < hi; j++) {
+				int[] cj = count[j];
+				java.util.Arrays.fill(cj, 0, R, 0);
+				for (int i = start(j); i < start(j + 1); i++) {
+					cj[(key[src[i]] >>> shift) & mask]++;
+				}
+			}
+		});
+
+		// cumulative count, in digit order and within each digit in chunk order:
+		// first the total of each block of digits, then the start indices within each block
+		int[] base = new int[chunks + 1];
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int b = lo; b < hi; b++) {
+				int n = 0;
+				for (int r = digit(b, R); r < digit(b + 1, R); r++) {
+					for (int j = 0; j < chunks; j++) n += count[j][r];
+				}
+				base[b + 1] = n;
+			}
+		});
+		for (int b = 1; b <= chunks; b++) {
+			base[b] += base[b - 1];
+		}
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int b = lo; b < hi; b++) {
+				int index = base[b];
+				for (int r = digit(b, R); r < digit(b + 1, R); r++) {
+					for (int j = 0; j < chunks; j++) {
+						int n = count[j][r];
+						count[j][r] = index;
+						index += n;
+					}
+				}
+			}
+		});
+
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int j = lo; j < hi; j++) {
+				int[] cj = count[j];
+				for (int i = start(j); i < start(j + 1); i++) {
+					dst[cj[(key[src[i]] >>> shift) & mask]++] = src[i];
+				}
+			}
+		});
+	}
+
+	// new class of each suffix from the sorted pairs (c[i], c[i+h]) into cn[]
+	// uses rank[] as scratch space and returns the number of classes
+	private int classify(int[] p, int[] c, int[] cn, int[] rank, int h) {
+		// rank[i] = 1 if the i-th sorted pair differs from the previous one
+		forEachChunk((lo, hi) -> {
+			for (int i = lo; i < hi; i++) {
+				rank[i] = i > 0 && (c[p[i]] != c[p[i - 1]] || c[rotate(p[i], h)] != c[rotate(p[i - 1], h)]) ? 1 : 0;
+			}
+		});
+
+		// prefix sums: first within each chunk, then add the totals of previous chunks
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int j = lo; j < hi; j++) {
+				for (int i = start(j) + 1; i < start(j + 1); i++) {
+					rank[i] += rank[i - 1];
+				}
+			}
+		});
+		int[] base = new int[chunks];
+		for (int j = 1; j < chunks; j++) {
+			base[j] = base[j - 1] + rank[start(j) - 1];
+		}
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int j = lo; j < hi; j++) {
+				for (int i = start(j); i < start(j + 1); i++) {
+					cn[p[i]] = rank[i] + base[j];
+				}
+			}
+		});
+		return cn[p[N - 1]] + 1;
+	}
+
+	// index of the suffix h characters after suffix i, (i + h) % N without overflow
+	private int rotate(int i, int h) {
+		int j = i - (N - h);
+		return j < 0 ? j + N : j;
+	}
+
+	// first index of chunk j
+	private int start(int j) {
+		return (int) ((long) N * j / chunks);
+	}
+
+	// first digit of block b of the digits 0..R-1
+	private int digit(int b, int R) {
+		return (int) ((long) R * b / chunks);
+	}
+
+	// runs body over the whole input, one chunk per task
+	private void forEachChunk(RangeAction body) {
+		forEachChunk(chunks, (lo, hi) -> {
+			for (int j = lo; j < hi; j++) {
+				body.run(start(j), start(j + 1));
+			}
+		});
+	}
+
+	// runs body over 0..n-1 split into single items, in parallel when n > 1
+	private void forEachChunk(int n, RangeAction body) {
+		if (n == 1) body.run(0, 1);
+		else pool.invoke(new RangeTask(body, 0, n));
+	}
+
+	private interface RangeAction {
+		void run(int lo, int hi);
+	}
+
+	// runs body over lo..hi-1, splitting the range in halves down to single items
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final transient RangeAction body;
+		private final int lo, hi;
+
+		RangeTask(RangeAction body, int lo, int hi) {
+			this.body = body;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) body.run(lo, hi);
+			else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RangeTask(body, lo, mid), new RangeTask(body, mid, hi));
+			}
+		}
+	}
+
+	// return the length of suffix array
+	public int length() {
+		return N;
+	}
+
+	// returns the original index of ith sorted suffix
+	public int index(int i) {
+		if (i < 0 || i > N - 1) throw new java.lang.IllegalArgumentException();
+		return indices[i];
+	}
+
+	public static void main(String[] args) {
+		CircularSuffixArrayDoubling sf = new CircularSuffixArrayDoubling("ABRACADABRA!");
+		System.out.println("Results: ");
+		for (int k = 0; k < sf.N; k++) {
+			System.out.print(sf.indices[k] + " ");
+		}
+		System.out.println();
+		System.out.println(sf.index(2));
+	}
+}
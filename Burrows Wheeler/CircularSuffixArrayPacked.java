@@ -0,0 +1,251 @@
+// Sixth variant of CircularSuffixArray using radix sort on packed prefixes
+
+/**
+ * Sort an array of circular suffixes of a string by radix sorting 8-byte keys
+ *
+ * CircularSuffixArray1 makes one pass over the suffixes per character, reading
+ * one character (with a modulo) per suffix per pass. Here the first 8
+ * characters of each suffix are packed into one long key (big-endian, so the
+ * unsigned order of the keys is the order of the prefixes):
+ * 1. Build the keys of all suffixes in one pass, shifting in one character per
+ * suffix (key[i] = key[i-1] << 8 | s[i+7])
+ * 2. Sort the suffixes by key with LSD radix sort on 16-bit digits (4 passes
+ * instead of 8, and passes whose digit is the same for every key are skipped)
+ * 3. Suffixes with equal keys (ties) share their first d characters: pack the
+ * next 8 characters of each into its key and sort that group again (insertion
+ * sort for small groups, radix with 8-bit digits for medium ones), until no
+ * ties are left or the whole suffix is compared
+ * As in CircularSuffixArray, groups still tied after DEPTH_LIMIT characters
+ * are finished using the ranks of CircularSuffixArraySAIS, so repetitive input
+ * costs O(N * DEPTH_LIMIT / 8) key reads instead of O(N^2).
+ *
+ * @author pkrastnikova
+ *
+ */
+
+public class CircularSuffixArrayPacked {
+	private static final int DEPTH_LIMIT = 64; // max d before the induced sort fallback
+	private static final int INSERTION_CUTOFF = 32; // max group size for insertion sort
+	private int N; // number of suffixes
+	private int indices[]; // array with int references to each suffix
+	private final byte[] text; // 8-bit characters of the string
+	private final int offset; // index of the first character in text
+	private long[] keys; // packed prefix of indices[i] at the current depth
+	private int[] auxIndices; // scratch space of the radix sort
+	private long[] auxKeys;
+	private int[] count;
+	private int stack[]; // pending groups as (lo, hi, d) triples
+	private int top; // number of ints in stack
+	private int rank[]; // rank of each suffix, computed on first fallback
+	private CircularSuffixArraySAIS induced;
+	private final SuffixSortStats stats = new SuffixSortStats();
+
+	public CircularSuffixArrayPacked(String s) {
+		this(bytes(s), 0, s.length());
+	}
+
+	/**
+	 * Circular suffix array of len bytes of a[] starting at off
+	 * @throws IllegalArgumentException when a is null or off/len are out of range
+	 */
+	public CircularSuffixArrayPacked(byte[] a, int off, int len) {
+		if (a == null || off < 0 || len < 0 || off > a.length - len) throw new java.lang.IllegalArgumentException();
+		N = len;
+		text = a;
+		offset = off;
+		indices = new int[N];
+		if (N == 0) return;
+		keys = new long[N];
+		auxIndices = new int[N];
+		auxKeys = new long[N];
+		long start = SuffixSortStats.ENABLED ? System.nanoTime() : 0;
+
+		// 1. keys of all suffixes, one new character each
+		long key = 0;
+		for (int j = 0; j < 8; j++) {
+			key = (key << 8) | charAt(j);
+		}
+		for (int i = 0; i < N; i++) {
+			indices[i] = i;
+			keys[i] = key;
+			key = (key << 8) | charAt(i + 8);
+		}
+		if (SuffixSortStats.ENABLED) {
+			stats.phase("keys", start);
+			start = System.nanoTime();
+		}
+
+		// 2. sort by the first 8 characters
+		radixSort(0, N, 16);
+		stack = new int[48];
+		pushTies(0, N, 8);
+		if (SuffixSortStats.ENABLED) {
+			stats.phase("radix", start);
+			start = System.nanoTime();
+		}
+
+		// 3. sort the groups of ties by the next 8 characters
+		while (top > 0) {
+			int d = stack[--top];
+			int hi = stack[--top];
+			int lo = stack[--top];
+			if (SuffixSortStats.ENABLED) {
+				stats.partition(hi - lo);
+				stats.depth(d);
+			}
+			if (d > DEPTH_LIMIT) {
+				sortByRank(lo, hi);
+				continue;
+			}
+			for (int k = lo; k < hi; k++) {
+				keys[k] = key(indices[k], d);
+			}
+			if (hi - lo <= INSERTION_CUTOFF) insertionSort(lo, hi);
+			else radixSort(lo, hi, hi - lo < (1 << 16) ? 8 : 16);
+			pushTies(lo, hi, d + 8);
+		}
+		if (SuffixSortStats.ENABLED) stats.phase("ties", start);
+
+		// release the scratch space
+		keys = null;
+		auxIndices = null;
+		auxKeys = null;
+		count = null;
+		stack = null;
+		rank = null;
+		induced = null;
+	}
+
+	// 8-bit (extended ASCII) characters of s, as read by BinaryStdIn
+	private static byte[] bytes(String s) {
+		if (s == null) throw new java.lang.IllegalArgumentException();
+		return s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+	// character j of the circular string (j may pass N)
+	private int charAt(long j) {
+		return text[offset + (int) (j < N ? j : j % N)] & 0xFF;
+	}
+
+	// characters d..d+7 of suffix i, packed big-endian
+	private long key(int i, int d) {
+		long j = (long) i + d;
+		long key = 0;
+		for (int k = 0; k < 8; k++) {
+			key = (key << 8) | charAt(j + k);
+		}
+		return key;
+	}
+
+	// LSD radix sort of keys[lo..hi-1] (unsigned) and indices[lo..hi-1] on digits of the given bits
+	private void radixSort(int lo, int hi, int bits) {
+		int R = 1 << bits;
+		if (count == null || count.length < R + 1) count = new int[R + 1];
+		int n = hi - lo;
+		for (int shift = 0; shift < 64; shift += bits) {
+			java.util.Arrays.fill(count, 0, R + 1, 0);
+			for (int k = lo; k < hi; k++) {
+				count[(int) ((keys[k] >>> shift) & (R - 1)) + 1]++;
+			}
+			if (count[(int) ((keys[lo] >>> shift) & (R - 1)) + 1] == n) continue; // same digit in every key
+			if (SuffixSortStats.ENABLED) stats.partition(n);
+
+			for (int r = 0; r < R; r++) {
+				count[r + 1] += count[r];
+			}
+			for (int k = lo; k < hi; k++) {
+				int r = (int) ((keys[k] >>> shift) & (R - 1));
+				int index = count[r]++;
+				auxKeys[index] = keys[k];
+				auxIndices[index] = indices[k];
+			}
+			System.arraycopy(auxKeys, 0, keys, lo, n);
+			System.arraycopy(auxIndices, 0, indices, lo, n);
+		}
+	}
+
+	private void insertionSort(int lo, int hi) {
+		for (int i = lo + 1; i < hi; i++) {
+			long key = keys[i];
+			int index = indices[i];
+			int j = i;
+			for (; j > lo && Long.compareUnsigned(keys[j - 1], key) > 0; j--) {
+				if (SuffixSortStats.ENABLED) stats.compare();
+				keys[j] = keys[j - 1];
+				indices[j] = indices[j - 1];
+			}
+			keys[j] = key;
+			indices[j] = index;
+		}
+	}
+
+	// push the groups of equal keys in lo..hi-1 to be sorted from character d,
+	// unless the whole suffix has been compared (equal circular suffixes)
+	private void pushTies(int lo, int hi, int d) {
+		if (d >= N) return;
+		for (int i = lo; i < hi; ) {
+			int j = i + 1;
+			while (j < hi && keys[j] == keys[i]) j++;
+			if (j - i > 1) {
+				if (top + 3 > stack.length) stack = java.util.Arrays.copyOf(stack, 2 * stack.length);
+				stack[top++] = i;
+				stack[top++] = j;
+				stack[top++] = d;
+			}
+			i = j;
+		}
+	}
+
+	// sort suffixes lo..hi-1 (equal in their first d characters) by their rank
+	// in the induced suffix array
+	private void sortByRank(int lo, int hi) {
+		if (rank == null) {
+			long start = SuffixSortStats.ENABLED ? System.nanoTime() : 0;
+			induced = new CircularSuffixArraySAIS(text, offset, N);
+			rank = new int[N];
+			for (int r = 0; r < N; r++) {
+				rank[induced.index(r)] = r;
+			}
+			if (SuffixSortStats.ENABLED) stats.phase("induced fallback", start);
+		}
+		int[] ranks = new int[hi - lo];
+		for (int k = lo; k < hi; k++) {
+			ranks[k - lo] = rank[indices[k]];
+		}
+		java.util.Arrays.sort(ranks);
+		for (int k = lo; k < hi; k++) {
+			indices[k] = induced.index(ranks[k - lo]);
+		}
+	}
+
+	/**
+	 * Returns the counters and timings of the sort
+	 * (all zeros unless run with -Dsuffixsort.stats=true)
+	 * @return stats
+	 */
+	public SuffixSortStats stats() {
+		return stats;
+	}
+
+	// return the length of suffix array
+	public int length() {
+		return N;
+	}
+
+	// returns the original index of ith sorted suffix
+	public int index(int i) {
+		if (i < 0 || i > N - 1) throw new java.lang.IllegalArgumentException();
+		return indices[i];
+	}
+
+	public static void main(String[] args) {
+		CircularSuffixArrayPacked sf = new CircularSuffixArrayPacked("ABRACADABRA!");
+		System.out.println("Results: ");
+		for (int k = 0; k < sf.N; k++) {
+			System.out.print(sf.indices[k] + " ");
+		}
+		System.out.println();
+		System.out.println(sf.index(2));
+		System.out.println(sf.stats());
+	}
+}
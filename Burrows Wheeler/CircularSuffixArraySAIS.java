@@ -0,0 +1,231 @@
+// Third variant of CircularSuffixArray using induced sorting (SA-IS)
+
+/**
+ * Sort an array of circular suffixes of a string in linear time
+ *
+ * Use SA-IS (suffix array by induced sorting, Nong, Zhang and Chan):
+ * 1. Classify each suffix as S-type (smaller than the next suffix) or L-type
+ * (larger than the next suffix); an S-type suffix preceded by an L-type suffix
+ * is a leftmost S-type (LMS) suffix
+ * 2. Place the LMS suffixes at the ends of their buckets and induce the order of
+ * the L-type suffixes (left to right) and S-type suffixes (right to left)
+ * 3. Name the sorted LMS substrings; if the names are not unique, sort the reduced
+ * string recursively (it is at most half as long), else the order is already known
+ * 4. Use the sorted LMS suffixes to induce the final order once more
+ *
+ * Circular suffixes are sorted as the linear suffixes of s+s followed by a
+ * sentinel: two different circular suffixes always differ in their first N
+ * characters, so the suffixes of the doubled string that start in the first half
+ * come out in the order of the circular suffixes.
+ * Time and memory are linear in N no matter how repetitive the string is.
+ *
+ * @author pkrastnikova
+ *
+ */
+
+public class CircularSuffixArraySAIS {
+	private int N; // number of suffixes
+	private int indices[]; // array with int references to each suffix
+
+	public CircularSuffixArraySAIS(String s) {
+		this(bytes(s), 0, s.length());
+	}
+
+	/**
+	 * Circular suffix array of len bytes of a[] starting at off
+	 * @throws IllegalArgumentException when a is null or off/len are out of range
+	 */
+	public CircularSuffixArraySAIS(byte[] a, int off, int len) {
+		this(wrap(a, off, len));
+	}
+
+	/**
+	 * Circular suffix array of the remaining bytes of buffer b
+	 * The bytes are read in place (heap, direct or mapped buffer) and the
+	 * position of b is not changed
+	 * @throws IllegalArgumentException when b is null
+	 */
+	public CircularSuffixArraySAIS(java.nio.ByteBuffer b) {
+		if (b == null) throw new java.lang.IllegalArgumentException();
+		N = b.remaining();
+		indices = new int[N];
+		if (N == 0) return;
+
+		// doubled string over alphabet 1..256, terminated with sentinel 0
+		int base = b.position();
+		int[] text = new int[2 * N + 1];
+		for (int i = 0; i < N; i++) {
+			text[i] = (b.get(base + i) & 0xFF) + 1;
+			text[i + N] = text[i];
+		}
+		text[2 * N] = 0;
+
+		int[] sa = new int[2 * N + 1];
+		sais(text, sa, 2 * N + 1, 257);
+
+		// keep only suffixes starting in the first copy of s
+		int k = 0;
+		for (int i = 0; i < sa.length; i++) {
+			if (sa[i] < N) indices[k++] = sa[i];
+		}
+	}
+
+	// 8-bit (extended ASCII) characters of s, as read by BinaryStdIn
+	private static byte[] bytes(String s) {
+		if (s == null) throw new java.lang.IllegalArgumentException();
+		return s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+	// view of len bytes of a[] starting at off
+	private static java.nio.ByteBuffer wrap(byte[] a, int off, int len) {
+		if (a == null || off < 0 || len < 0 || off > a.length - len) throw new java.lang.IllegalArgumentException();
+		return java.nio.ByteBuffer.wrap(a, off, len);
+	}
+
+	/**
+	 * Computes the suffix array sa[] of s[0..n-1]
+	 * s[n-1] must be the unique smallest symbol (the sentinel) and all symbols
+	 * must be in the range 0..K-1
+	 */
+	static void sais(int[] s, int[] sa, int n, int K) {
+		if (n == 1) {
+			sa[0] = 0;
+			return;
+		}
+
+		// 1. classify suffixes: true for S-type, false for L-type
+		boolean[] t = new boolean[n];
+		t[n - 1] = true;
+		for (int i = n - 2; i >= 0; i--) {
+			t[i] = s[i] < s[i + 1] || (s[i] == s[i + 1] && t[i + 1]);
+		}
+
+		// 2. sort LMS substrings by a first induced pass
+		int[] bucket = new int[K];
+		bucketEnds(s, n, bucket);
+		java.util.Arrays.fill(sa, 0, n, -1);
+		for (int i = 1; i < n; i++) {
+			if (isLMS(t, i)) sa[--bucket[s[i]]] = i;
+		}
+		induceL(s, sa, t, n, bucket);
+		induceS(s, sa, t, n, bucket);
+
+		// compact sorted LMS substrings into the first n1 items of sa
+		int n1 = 0;
+		for (int i = 0; i < n; i++) {
+			if (isLMS(t, sa[i])) sa[n1++] = sa[i];
+		}
+
+		// 3. name LMS substrings; equal substrings get equal names
+		java.util.Arrays.fill(sa, n1, n, -1);
+		int name = 0;
+		int prev = -1;
+		for (int i = 0; i < n1; i++) {
+			int pos = sa[i];
+			boolean diff = false;
+			for (int d = 0; d < n; d++) {
+				if (prev == -1 || s[pos + d] != s[prev + d] || t[pos + d] != t[prev + d]) {
+					diff = true;
+					break;
+				}
+				else if (d > 0 && (isLMS(t, pos + d) || isLMS(t, prev + d))) break;
+			}
+			if (diff) {
+				name++;
+				prev = pos;
+			}
+			// LMS positions are at least 2 apart, so pos/2 is unique
+			sa[n1 + pos / 2] = name - 1;
+		}
+		int[] s1 = new int[n1];
+		for (int i = n - 1, j = n1 - 1; i >= n1; i--) {
+			if (sa[i] >= 0) s1[j--] = sa[i];
+		}
+
+		// sort the reduced string, recursively if names are not yet unique
+		int[] sa1 = new int[n1];
+		if (name < n1) sais(s1, sa1, n1, name);
+		else {
+			for (int i = 0; i < n1; i++) {
+				sa1[s1[i]] = i;
+			}
+		}
+
+		// 4. induce the final order from the sorted LMS suffixes
+		for (int i = 1, j = 0; i < n; i++) {
+			if (isLMS(t, i)) s1[j++] = i;
+		}
+		bucketEnds(s, n, bucket);
+		java.util.Arrays.fill(sa, 0, n, -1);
+		for (int i = n1 - 1; i >= 0; i--) {
+			int j = s1[sa1[i]];
+			sa[--bucket[s[j]]] = j;
+		}
+		induceL(s, sa, t, n, bucket);
+		induceS(s, sa, t, n, bucket);
+	}
+
+	// true if the suffix at position i is a leftmost S-type suffix
+	private static boolean isLMS(boolean[] t, int i) {
+		return i > 0 && t[i] && !t[i - 1];
+	}
+
+	// bucket[c] = index just past the last slot for symbol c
+	private static void bucketEnds(int[] s, int n, int[] bucket) {
+		java.util.Arrays.fill(bucket, 0);
+		for (int i = 0; i < n; i++) {
+			bucket[s[i]]++;
+		}
+		for (int c = 1; c < bucket.length; c++) {
+			bucket[c] += bucket[c - 1];
+		}
+	}
+
+	// bucket[c] = index of the first slot for symbol c
+	private static void bucketStarts(int[] s, int n, int[] bucket) {
+		bucketEnds(s, n, bucket);
+		for (int c = bucket.length - 1; c > 0; c--) {
+			bucket[c] = bucket[c - 1];
+		}
+		bucket[0] = 0;
+	}
+
+	// scan left to right and place L-type suffixes at the starts of their buckets
+	private static void induceL(int[] s, int[] sa, boolean[] t, int n, int[] bucket) {
+		bucketStarts(s, n, bucket);
+		for (int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if (j >= 0 && !t[j]) sa[bucket[s[j]]++] = j;
+		}
+	}
+
+	// scan right to left and place S-type suffixes at the ends of their buckets
+	private static void induceS(int[] s, int[] sa, boolean[] t, int n, int[] bucket) {
+		bucketEnds(s, n, bucket);
+		for (int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if (j >= 0 && t[j]) sa[--bucket[s[j]]] = j;
+		}
+	}
+
+	// return the length of suffix array
+	public int length() {
+		return N;
+	}
+
+	// returns the original index of ith sorted suffix
+	public int index(int i) {
+		if (i < 0 || i > N - 1) throw new java.lang.IllegalArgumentException();
+		return indices[i];
+	}
+
+	public static void main(String[] args) {
+		CircularSuffixArraySAIS sf = new CircularSuffixArraySAIS("ABRACADABRA!");
+		System.out.println("Results: ");
+		for (int k = 0; k < sf.N; k++) {
+			System.out.print(sf.indices[k] + " ");
+		}
+		System.out.println();
+		System.out.println(sf.index(2));
+	}
+}
@@ -0,0 +1,422 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long-running compression server on a Unix domain socket
+ *
+ * Every run of BurrowsWheeler or MoveToFront as a filter pays for a JVM start
+ * and runs cold code. The daemon stays up, so all jobs share the same warmed-up
+ * (JIT compiled) code. Each connection is served on its own virtual thread
+ * (Java 21+, platform threads of a cached pool on older JVMs) and sends any
+ * number of jobs, one after the other:
+ *
+ *   request:  byte op | int length | length bytes
+ *   response: byte status (0 ok, 1 error) | int length | length bytes
+ *             (the result, or the error message in UTF-8)
+ *
+ * op is one of:
+ * - 'T' Burrows-Wheeler transform: the result is int first | t[]
+ * - 'I' inverse transform of int first | t[]
+ * - 'C' compress one block with Compressor (the whole pipeline)
+ * - 'D' decompress a block produced by 'C'
+ * - 'S' latency stats of every op so far, as text (the request has no bytes)
+ *
+ * Input and transform buffers are taken from a pool and given back after each
+ * job, so small jobs do not allocate new arrays for them. The pool keeps one
+ * free list per power-of-2 size from 4 KB to 4 MB, so a job only gets a buffer
+ * of its own size class, and holds at most 64 MB in all. Larger buffers (and
+ * buffers released to a full pool) are left to the garbage collector, so a burst
+ * of large jobs does not keep its memory after it ends.
+ *
+ * A job may be up to MAX_JOB bytes and any number of clients may connect, so
+ * jobs are admitted by the memory they need: about MEMORY_PER_BYTE bytes per
+ * byte of input, counted against a semaphore of half the maximum heap. A job
+ * waits until enough of it is free. A job larger than the whole budget, or one
+ * that still runs out of memory, gets an error response; its bytes are read and
+ * dropped so the connection can send the next job.
+ *
+ * Dependency: BurrowsWheeler.java, Compressor.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class CompressionDaemon implements AutoCloseable {
+	public static final int MAX_JOB = 1 << 28; // max bytes per request
+	private static final byte OK = 0, ERROR = 1;
+	private static final String OPS = "TICDS";
+	private static final int MIN_POOLED_LOG = 12; // smallest buffer, 4 KB
+	private static final int MAX_POOLED_LOG = 22; // largest pooled buffer, 4 MB
+	private static final long POOL_BYTES = 64L << 20; // max bytes held by the pool
+	// heap per input byte of a job: input, output and the int[2N+1] text and
+	// suffix array of the transform
+	private static final int MEMORY_PER_BYTE = 24;
+
+	private final Path path;
+	private final ServerSocketChannel server;
+	private final ExecutorService executor = connectionExecutor();
+	private final Compressor compressor = new Compressor();
+	private final List<ConcurrentLinkedQueue<byte[]>> buffers = newPool(); // free buffers of each size class
+	private final AtomicLong pooled = new AtomicLong(); // bytes held by the pool
+	private final JobStats[] stats = new JobStats[OPS.length()];
+	private final int budget = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 2 >> 10); // KB for running jobs
+	private final Semaphore admission = new Semaphore(budget); // KB free for running jobs
+
+	/**
+	 * Creates a daemon listening on the socket file path (replaced if it exists)
+	 * @throws IllegalArgumentException when called with null argument
+	 * @throws UncheckedIOException when the socket cannot be bound
+	 */
+	public CompressionDaemon(Path path) {
+		if (path == null) throw new java.lang.IllegalArgumentException();
+		this.path = path;
+		for (int i = 0; i < stats.length; i++) {
+			stats[i] = new JobStats();
+		}
+		try {
+			Files.deleteIfExists(path);
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(path));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// one virtual thread per task when the JVM has them (looked up by name, so the
+	// class also runs on Java 17), else a cached pool of platform threads
+	private static ExecutorService connectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Accepts connections until the daemon is closed
+	 * @throws UncheckedIOException when accepting fails
+	 */
+	public void serve() {
+		try {
+			while (true) {
+				SocketChannel client = server.accept();
+				executor.execute(() -> handle(client));
+			}
+		}
+		catch (ClosedChannelException e) {
+			// closed: stop accepting
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Stops accepting connections, lets the running jobs finish and removes the
+	 * socket file
+	 */
+	@Override
+	public void close() {
+		try {
+			server.close();
+			executor.shutdown();
+			Files.deleteIfExists(path);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// serves the jobs of one connection until the client closes it
+	private void handle(SocketChannel client) {
+		ByteBuffer header = ByteBuffer.allocate(5);
+		try (SocketChannel channel = client) {
+			while (true) {
+				header.clear();
+				if (!readFully(channel, header)) return; // end of the connection
+				int op = OPS.indexOf(header.get(0));
+				int length = header.getInt(1);
+				if (op < 0 || length < 0 || length > MAX_JOB) {
+					respond(channel, ERROR, ("bad request: op " + header.get(0) + ", length " + length).getBytes(StandardCharsets.UTF_8), 0);
+					return;
+				}
+
+				int memory = (int) Math.max(1, (long) length * MEMORY_PER_BYTE >> 10);
+				if (memory > budget) {
+					stats[op].error();
+					reject(channel, length, "job too large: " + length + " bytes need " + memory + " KB, the daemon has " + budget + " KB");
+					continue;
+				}
+				admission.acquire(memory);
+				try {
+					byte[] in;
+					try {
+						in = acquire(length);
+					}
+					catch (OutOfMemoryError e) {
+						stats[op].error();
+						reject(channel, length, "out of memory");
+						continue;
+					}
+					try {
+						if (!readFully(channel, ByteBuffer.wrap(in, 0, length))) return;
+						long start = System.nanoTime();
+						run(channel, op, in, length, start);
+					}
+					finally {
+						release(in);
+					}
+				}
+				finally {
+					admission.release(memory);
+				}
+			}
+		}
+		catch (IOException e) {
+			// the client went away
+		}
+		catch (InterruptedException e) {
+			// shutting down
+		}
+	}
+
+	// reads and drops the length bytes of a job, then sends an error response
+	private static void reject(SocketChannel channel, int length, String message) throws IOException {
+		ByteBuffer skip = ByteBuffer.allocate(Math.min(length, 1 << 16));
+		for (int left = length; left > 0; left -= skip.limit()) {
+			skip.clear().limit(Math.min(left, skip.capacity()));
+			if (!readFully(channel, skip)) throw new IOException("truncated message");
+		}
+		respond(channel, ERROR, message.getBytes(StandardCharsets.UTF_8), 0);
+	}
+
+	// runs one job and sends its response
+	private void run(SocketChannel channel, int op, byte[] in, int length, long start) throws IOException {
+		byte[] out = null;
+		try {
+			switch (OPS.charAt(op)) {
+			case 'T':
+				out = acquire(4 + length);
+				int first = BurrowsWheeler.transform(in, 0, length, out);
+				System.arraycopy(out, 0, out, 4, length);
+				ByteBuffer.wrap(out).putInt(0, first);
+				finish(channel, op, out, 4 + length, start);
+				break;
+			case 'I':
+				if (length < 4) throw new java.lang.IllegalArgumentException("missing first");
+				out = acquire(length - 4);
+				BurrowsWheeler.inverseTransform(ByteBuffer.wrap(in).getInt(0), in, 4, length - 4, out);
+				finish(channel, op, out, length - 4, start);
+				break;
+			case 'C':
+				byte[] block = compressor.compress(in, 0, length);
+				finish(channel, op, block, block.length, start);
+				break;
+			case 'D':
+				byte[] original = compressor.decompress(Arrays.copyOf(in, length));
+				finish(channel, op, original, original.length, start);
+				break;
+			default:
+				byte[] text = stats().getBytes(StandardCharsets.UTF_8);
+				finish(channel, op, text, text.length, start);
+			}
+		}
+		catch (RuntimeException | OutOfMemoryError e) {
+			// a bad job or one that needs more memory than admitted: the daemon goes on
+			stats[op].error();
+			String message = e.getMessage() == null ? e.toString() : e.getMessage();
+			respond(channel, ERROR, message.getBytes(StandardCharsets.UTF_8), 0);
+		}
+		finally {
+			if (out != null) release(out);
+		}
+	}
+
+	// records the latency of a job (up to its response) and sends the result
+	private void finish(SocketChannel channel, int op, byte[] result, int length, long start) throws IOException {
+		respond(channel, OK, result, length);
+		stats[op].record(System.nanoTime() - start);
+	}
+
+	private static void respond(SocketChannel channel, byte status, byte[] result, int length) throws IOException {
+		if (status == ERROR) length = result.length;
+		ByteBuffer header = ByteBuffer.allocate(5);
+		header.put(status).putInt(length).flip();
+		ByteBuffer[] response = { header, ByteBuffer.wrap(result, 0, length) };
+		while (response[0].hasRemaining() || response[1].hasRemaining()) {
+			channel.write(response);
+		}
+	}
+
+	// fills b, returns false when the channel ends before the first byte
+	private static boolean readFully(SocketChannel channel, ByteBuffer b) throws IOException {
+		int start = b.position();
+		while (b.hasRemaining()) {
+			if (channel.read(b) < 0) {
+				if (b.position() == start) return false;
+				throw new IOException("truncated message");
+			}
+		}
+		return true;
+	}
+
+	// one empty free list per size class
+	private static List<ConcurrentLinkedQueue<byte[]>> newPool() {
+		List<ConcurrentLinkedQueue<byte[]>> pool = new ArrayList<ConcurrentLinkedQueue<byte[]>>();
+		for (int k = MIN_POOLED_LOG; k <= MAX_POOLED_LOG; k++) {
+			pool.add(new ConcurrentLinkedQueue<byte[]>());
+		}
+		return pool;
+	}
+
+	// a buffer of at least n bytes: one of the size class of n from the pool (capacities
+	// are powers of 2) or, above the largest class, a new array of n bytes
+	private byte[] acquire(int n) {
+		if (n > 1 << MAX_POOLED_LOG) return new byte[n];
+		int k = sizeClass(n);
+		byte[] buffer = buffers.get(k).poll();
+		if (buffer == null) return new byte[1 << (MIN_POOLED_LOG + k)];
+		pooled.addAndGet(-buffer.length);
+		return buffer;
+	}
+
+	// gives a buffer from acquire() back to the pool, unless it is above the largest
+	// size class or the pool is full
+	private void release(byte[] buffer) {
+		if (buffer.length > 1 << MAX_POOLED_LOG) return;
+		if (pooled.addAndGet(buffer.length) > POOL_BYTES) {
+			pooled.addAndGet(-buffer.length);
+			return;
+		}
+		buffers.get(sizeClass(buffer.length)).offer(buffer);
+	}
+
+	// index of the smallest size class with buffers of at least n bytes
+	private static int sizeClass(int n) {
+		return 32 - Integer.numberOfLeadingZeros(Math.max(n, 1 << MIN_POOLED_LOG) - 1) - MIN_POOLED_LOG;
+	}
+
+	/**
+	 * Returns the latency stats of every op: jobs, errors, mean, median (p50),
+	 * p99 and max latency in microseconds
+	 * @return one line per op
+	 */
+	public String stats() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < stats.length; i++) {
+			sb.append(OPS.charAt(i)).append(": ").append(stats[i]).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Latency counters of one op: the latencies are counted in buckets of
+	 * powers of 2 nanoseconds, so the percentiles are within a factor of 2
+	 */
+	private static class JobStats {
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final LongAdder jobs = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		void record(long nanos) {
+			jobs.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+		}
+
+		void error() {
+			errors.increment();
+		}
+
+		// upper bound of the bucket that holds the q-quantile, in nanoseconds
+		long percentile(double q) {
+			long n = jobs.sum(), seen = 0;
+			for (int k = 0; k < 64; k++) {
+				seen += buckets.get(k);
+				if (seen > 0 && seen >= q * n) return Math.min(maxNanos.get(), (2L << k) - 1);
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			long n = jobs.sum();
+			return "jobs " + n + ", errors " + errors.sum() + ", mean " + (n == 0 ? 0 : totalNanos.sum() / n / 1000)
+					+ " us, p50 " + percentile(0.5) / 1000 + " us, p99 " + percentile(0.99) / 1000 + " us, max "
+					+ maxNanos.get() / 1000 + " us";
+		}
+	}
+
+	/**
+	 * Sends one job to the daemon at path and returns its result
+	 * @param op 'T', 'I', 'C', 'D' or 'S'
+	 * @throws IllegalArgumentException when path or in is null, or op is unknown
+	 * @throws UncheckedIOException when the daemon cannot be reached or the job fails
+	 */
+	public static byte[] request(Path path, char op, byte[] in) {
+		if (path == null || in == null || OPS.indexOf(op) < 0) throw new java.lang.IllegalArgumentException();
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+			ByteBuffer header = ByteBuffer.allocate(5);
+			header.put((byte) op).putInt(in.length).flip();
+			ByteBuffer[] request = { header, ByteBuffer.wrap(in) };
+			while (request[0].hasRemaining() || request[1].hasRemaining()) {
+				channel.write(request);
+			}
+
+			header.clear();
+			if (!readFully(channel, header)) throw new IOException("no response");
+			byte[] result = new byte[header.getInt(1)];
+			if (result.length > 0 && !readFully(channel, ByteBuffer.wrap(result))) throw new IOException("truncated response");
+			if (header.get(0) != OK) throw new IOException(new String(result, StandardCharsets.UTF_8));
+			return result;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// serve socket               - run the daemon on the socket file
+	// T|I|C|D socket < in > out  - send standard input as one job
+	// S socket                   - print the latency stats
+	public static void main(String[] args) throws IOException {
+		Path path = Paths.get(args[1]);
+		if (args[0].equals("serve")) {
+			try (CompressionDaemon daemon = new CompressionDaemon(path)) {
+				Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+				daemon.serve();
+			}
+		}
+		else if (args[0].length() == 1 && OPS.indexOf(args[0].charAt(0)) >= 0) {
+			byte[] in = args[0].equals("S") ? new byte[0] : System.in.readAllBytes();
+			System.out.write(request(path, args[0].charAt(0), in));
+			System.out.flush();
+		}
+		else
+			throw new java.lang.IllegalArgumentException();
+	}
+}
@@ -0,0 +1,204 @@
+import edu.princeton.cs.algs4.BinaryStdIn;
+import edu.princeton.cs.algs4.BinaryStdOut;
+
+/**
+ * Block compressor that chains the stages of a Burrows–Wheeler compressor in
+ * one process, without round trips through standard input/output:
+ *
+ *   Burrows-Wheeler transform -> move-to-front -> zero-run encoding -> Huffman
+ *
+ * The input is split into blocks and each block is passed through every stage in
+ * order; decompression runs the stages in reverse order. The stages are
+ * pluggable (see Stage), so a different pipeline can be built with
+ * new Compressor(stage1, stage2, ...) for benchmarking or to swap a stage, e.g.
+ * new MoveToFrontStage(MoveToFront.Rule.MTF2), DistanceCodingStage or
+ * AdaptiveMoveToFrontStage (the best of those for each block) in place of
+ * MoveToFrontStage.
+ *
+ * The compressed stream is a sequence of frames, one per block:
+ *
+ *   int length | length bytes of the compressed block
+ *
+ * Dependency: Stage.java, BurrowsWheeler.java, MoveToFront.java,
+ * ZeroRunStage.java, HuffmanStage.java, BinaryStdIn.java, BinaryStdOut.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class Compressor {
+	public static final int DEFAULT_BLOCK_SIZE = BlockBurrowsWheeler.DEFAULT_BLOCK_SIZE;
+
+	private final Stage[] stages;
+
+	/**
+	 * Creates the default pipeline: Burrows-Wheeler transform, move-to-front,
+	 * zero-run encoding and Huffman coding
+	 */
+	public Compressor() {
+		this(new BurrowsWheelerStage(), new MoveToFrontStage(), new ZeroRunStage(), new HuffmanStage());
+	}
+
+	/**
+	 * Creates a pipeline of the given stages, applied in order when compressing
+	 * @param stages the stages
+	 * @throws IllegalArgumentException when called with null argument or a null stage
+	 */
+	public Compressor(Stage... stages) {
+		if (stages == null) throw new java.lang.IllegalArgumentException();
+		for (Stage stage : stages) {
+			if (stage == null) throw new java.lang.IllegalArgumentException();
+		}
+		this.stages = stages.clone();
+	}
+
+	/**
+	 * Compresses len bytes of in[] starting at off as one block
+	 * @return the compressed block
+	 * @throws IllegalArgumentException when in is null or off/len are out of range
+	 */
+	public byte[] compress(byte[] in, int off, int len) {
+		if (in == null || off < 0 || len < 0 || off > in.length - len) throw new java.lang.IllegalArgumentException();
+		byte[] block = java.util.Arrays.copyOfRange(in, off, off + len);
+		for (Stage stage : stages) {
+			block = stage.encode(block);
+		}
+		return block;
+	}
+
+	/**
+	 * Decompresses a block produced by compress()
+	 * @return the original block
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public byte[] decompress(byte[] block) {
+		if (block == null) throw new java.lang.IllegalArgumentException();
+		for (int i = stages.length - 1; i >= 0; i--) {
+			block = stages[i].decode(block);
+		}
+		return block;
+	}
+
+	/**
+	 * Compresses standard input to standard output, one frame per block
+	 * @param blockSize maximum number of bytes per block
+	 * @throws IllegalArgumentException when blockSize is not positive
+	 */
+	public void compress(int blockSize) {
+		if (blockSize <= 0) throw new java.lang.IllegalArgumentException();
+		byte[] buffer = new byte[blockSize];
+		while (!BinaryStdIn.isEmpty()) {
+			int length = 0;
+			while (length < blockSize && !BinaryStdIn.isEmpty()) {
+				buffer[length++] = BinaryStdIn.readByte();
+			}
+			byte[] block = compress(buffer, 0, length);
+			BinaryStdOut.write(block.length);
+			for (int i = 0; i < block.length; i++) {
+				BinaryStdOut.write(block[i]);
+			}
+		}
+		BinaryStdOut.flush();
+	}
+
+	/**
+	 * Decompresses frames from standard input to standard output
+	 */
+	public void decompress() {
+		while (!BinaryStdIn.isEmpty()) {
+			byte[] block = new byte[BinaryStdIn.readInt()];
+			for (int i = 0; i < block.length; i++) {
+				block[i] = BinaryStdIn.readByte();
+			}
+			block = decompress(block);
+			for (int i = 0; i < block.length; i++) {
+				BinaryStdOut.write(block[i]);
+			}
+		}
+		BinaryStdOut.flush();
+	}
+
+	// big-endian int, as written by BinaryStdOut
+	static void writeInt(byte[] a, int off, int x) {
+		a[off] = (byte) (x >>> 24);
+		a[off + 1] = (byte) (x >>> 16);
+		a[off + 2] = (byte) (x >>> 8);
+		a[off + 3] = (byte) x;
+	}
+
+	static int readInt(byte[] a, int off) {
+		return ((a[off] & 0xFF) << 24) | ((a[off + 1] & 0xFF) << 16) | ((a[off + 2] & 0xFF) << 8) | (a[off + 3] & 0xFF);
+	}
+
+	/**
+	 * Burrows-Wheeler transform as a stage: first (int) followed by t[]
+	 */
+	public static class BurrowsWheelerStage implements Stage {
+
+		public String name() {
+			return "bwt";
+		}
+
+		public byte[] encode(byte[] block) {
+			byte[] t = new byte[block.length];
+			int first = BurrowsWheeler.transform(block, 0, block.length, t);
+			byte[] out = new byte[4 + block.length];
+			writeInt(out, 0, first);
+			System.arraycopy(t, 0, out, 4, t.length);
+			return out;
+		}
+
+		public byte[] decode(byte[] block) {
+			byte[] out = new byte[block.length - 4];
+			BurrowsWheeler.inverseTransform(readInt(block, 0), block, 4, out.length, out);
+			return out;
+		}
+	}
+
+	/**
+	 * Move-to-front encoding as a stage, with the classic rule or one of its
+	 * variants (see MoveToFront.Rule)
+	 */
+	public static class MoveToFrontStage implements Stage {
+		private final MoveToFront.Rule rule;
+
+		public MoveToFrontStage() {
+			this(MoveToFront.Rule.MTF);
+		}
+
+		/**
+		 * @throws IllegalArgumentException when called with null argument
+		 */
+		public MoveToFrontStage(MoveToFront.Rule rule) {
+			if (rule == null) throw new java.lang.IllegalArgumentException();
+			this.rule = rule;
+		}
+
+		public String name() {
+			return rule == MoveToFront.Rule.MTF ? "mtf" : rule == MoveToFront.Rule.MTF1 ? "mtf-1" : "mtf-2";
+		}
+
+		public byte[] encode(byte[] block) {
+			byte[] out = new byte[block.length];
+			MoveToFront.encode(rule, block, 0, block.length, out);
+			return out;
+		}
+
+		public byte[] decode(byte[] block) {
+			byte[] out = new byte[block.length];
+			MoveToFront.decode(rule, block, 0, block.length, out);
+			return out;
+		}
+	}
+
+	// if args[0] is '-', compress (args[1], if present, is the block size)
+	// if args[0] is '+', decompress
+	public static void main(String[] args) {
+		Compressor compressor = new Compressor();
+		if (args[0].equals("-"))
+			compressor.compress(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BLOCK_SIZE);
+		else if (args[0].equals("+"))
+			compressor.decompress();
+		else
+			throw new java.lang.IllegalArgumentException();
+	}
+}
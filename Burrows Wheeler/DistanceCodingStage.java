@@ -0,0 +1,166 @@
+/**
+ * Distance coding of Burrows-Wheeler output (after Binder), an alternative to
+ * move-to-front that only writes one number per run of equal bytes
+ *
+ * The block is first split into runs (byte, length); consecutive runs have
+ * different bytes. For each run r, in order, the encoder writes the distance to
+ * the next run of the same byte, counted only over the runs whose byte the
+ * decoder does not know yet (the first run of every byte is in the header, and
+ * every distance tells the decoder one more run). Known runs are skipped, so
+ * the distances are small where the transform clusters a byte, and 0 means
+ * that the byte has no later run.
+ *
+ * Output, all numbers as varints (7 bits per byte, least significant first):
+ *
+ *   int runs | 256 x (first run of the byte + 1, or 0) |
+ *   runs x distance | runs x (length of the run - 1)
+ *
+ * The distances and the lengths are two separate streams, so the zero-run stage
+ * that follows sees the long runs of 0 of the lengths.
+ * Both directions keep the unknown runs in a Fenwick tree, so counting them
+ * (encode) or finding the k-th (decode) takes O(log runs).
+ *
+ * @author pkrastnikova
+ *
+ */
+public class DistanceCodingStage implements Stage {
+
+	public String name() {
+		return "dc";
+	}
+
+	public byte[] encode(byte[] block) {
+		// runs
+		int[] symbol = new int[block.length], length = new int[block.length];
+		int runs = 0;
+		for (int i = 0; i < block.length; i++) {
+			if (runs > 0 && symbol[runs - 1] == (block[i] & 0xFF)) length[runs - 1]++;
+			else {
+				symbol[runs] = block[i] & 0xFF;
+				length[runs++] = 1;
+			}
+		}
+
+		// next run of the same byte, first run of each byte
+		int[] next = new int[runs];
+		int[] first = new int[256];
+		java.util.Arrays.fill(first, -1);
+		for (int r = runs - 1; r >= 0; r--) {
+			next[r] = first[symbol[r]];
+			first[symbol[r]] = r;
+		}
+
+		byte[] out = new byte[5 + 5 * 256 + 10 * runs];
+		int pos = writeVarint(out, 0, runs);
+		int[] unknown = tree(runs);
+		for (int c = 0; c < 256; c++) {
+			pos = writeVarint(out, pos, first[c] + 1);
+			if (first[c] >= 0) add(unknown, first[c], -1);
+		}
+		for (int r = 0; r < runs; r++) {
+			int distance = 0;
+			if (next[r] >= 0) {
+				// unknown runs after r up to and including next[r]
+				distance = prefix(unknown, next[r]) - prefix(unknown, r);
+				add(unknown, next[r], -1);
+			}
+			pos = writeVarint(out, pos, distance);
+		}
+		for (int r = 0; r < runs; r++) {
+			pos = writeVarint(out, pos, length[r] - 1);
+		}
+		return java.util.Arrays.copyOf(out, pos);
+	}
+
+	public byte[] decode(byte[] block) {
+		int[] pos = { 0 };
+		int runs = readVarint(block, pos);
+		int[] symbol = new int[runs];
+		int[] unknown = tree(runs);
+		for (int c = 0; c < 256; c++) {
+			int r = readVarint(block, pos) - 1;
+			if (r >= 0) {
+				symbol[r] = c;
+				add(unknown, r, -1);
+			}
+		}
+		for (int r = 0; r < runs; r++) {
+			int distance = readVarint(block, pos);
+			if (distance > 0) {
+				int next = find(unknown, prefix(unknown, r) + distance);
+				symbol[next] = symbol[r];
+				add(unknown, next, -1);
+			}
+		}
+
+		int[] length = new int[runs];
+		int n = 0;
+		for (int r = 0; r < runs; r++) {
+			length[r] = readVarint(block, pos) + 1;
+			n += length[r];
+		}
+		byte[] out = new byte[n];
+		for (int r = 0, i = 0; r < runs; r++) {
+			java.util.Arrays.fill(out, i, i + length[r], (byte) symbol[r]);
+			i += length[r];
+		}
+		return out;
+	}
+
+	// Fenwick tree (1-based) over n slots, every slot counted once
+	private static int[] tree(int n) {
+		int[] tree = new int[n + 1];
+		for (int i = 1; i <= n; i++) {
+			tree[i]++;
+			int parent = i + (i & -i);
+			if (parent <= n) tree[parent] += tree[i];
+		}
+		return tree;
+	}
+
+	private static void add(int[] tree, int slot, int delta) {
+		for (int i = slot + 1; i < tree.length; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	// sum of slots 0..slot
+	private static int prefix(int[] tree, int slot) {
+		int sum = 0;
+		for (int i = slot + 1; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	// the slot whose prefix sum first reaches k (k >= 1)
+	private static int find(int[] tree, int k) {
+		int i = 0;
+		for (int step = Integer.highestOneBit(Math.max(1, tree.length - 1)); step > 0; step >>= 1) {
+			if (i + step < tree.length && tree[i + step] < k) {
+				i += step;
+				k -= tree[i];
+			}
+		}
+		return i; // slot i is 1-based i + 1
+	}
+
+	private static int writeVarint(byte[] a, int pos, int x) {
+		while ((x & ~0x7F) != 0) {
+			a[pos++] = (byte) ((x & 0x7F) | 0x80);
+			x >>>= 7;
+		}
+		a[pos++] = (byte) x;
+		return pos;
+	}
+
+	// pos[0] is advanced past the varint
+	private static int readVarint(byte[] a, int[] pos) {
+		int x = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = a[pos[0]++];
+			x |= (b & 0x7F) << shift;
+			if (b >= 0) return x;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+import edu.princeton.cs.algs4.BinaryStdIn;
+
+/**
+ * FM-index: substring search over the Burrows–Wheeler transform of a text,
+ * without decompressing it
+ *
+ * The index keeps:
+ * - the t[] column, in a wavelet matrix (8 bit vectors with rank support), which
+ *   answers rank(c, i) - the number of c in t[0..i-1] - in O(1) per bit of c
+ * - C[c], the number of characters in the text and the sentinel that are smaller than c
+ * - a sample of the suffix array: the suffix index of every row whose suffix
+ *   index is a multiple of sampleRate
+ *
+ * count(pattern) is a backward search: starting from the last character of the
+ * pattern, the range of rows whose suffixes start with the current pattern
+ * suffix is narrowed with sp = C[c] + rank(c, sp), ep = C[c] + rank(c, ep),
+ * so it takes time proportional to the pattern length.
+ * locate(pattern) walks each row of the range back with the LF-mapping
+ * LF(i) = C[t[i]] + rank(t[i], i) until it reaches a sampled row, at most
+ * sampleRate - 1 steps per occurrence.
+ *
+ * The index is built on the text followed by a sentinel that is smaller than
+ * every byte, as in MultiStringBWT, so every suffix is distinct (also for a
+ * periodic text) and no match wraps around from the end of the text to its
+ * start. The sentinel has no byte value: t[] holds a 0 in its row, which is
+ * kept aside and taken out of rank(0, i).
+ *
+ * Dependency: CircularSuffixArraySAIS.java, BinaryStdIn.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class FMIndex {
+	public static final int DEFAULT_SAMPLE_RATE = 32;
+	private static final int R = 256; // extended ASCII
+
+	private final int N; // length of the text
+	private final int sentinel; // row where t[] is the sentinel
+	private final int[] C = new int[R + 1]; // 1 (the sentinel) + number of bytes smaller than c
+	private final WaveletMatrix bwt; // the t[] column
+	private final BitVector sampled; // rows whose suffix index is sampled
+	private final int[] samples; // suffix index of each sampled row, in row order
+
+	/**
+	 * Builds the FM-index of a text
+	 * @param text the text
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public FMIndex(byte[] text) {
+		this(text, 0, text == null ? 0 : text.length, DEFAULT_SAMPLE_RATE);
+	}
+
+	/**
+	 * Builds the FM-index of len bytes of text[] starting at off, sampling
+	 * every sampleRate-th suffix index
+	 * @throws IllegalArgumentException when text is null, off/len are out of
+	 *         range or sampleRate is not positive
+	 */
+	public FMIndex(byte[] text, int off, int len, int sampleRate) {
+		if (text == null || off < 0 || len < 0 || off > text.length - len || sampleRate <= 0)
+			throw new java.lang.IllegalArgumentException();
+		this.N = len;
+
+		// text #: bytes 1..256, sentinel 0
+		int n = N + 1;
+		int[] s = new int[n];
+		for (int i = 0; i < N; i++) {
+			s[i] = (text[off + i] & 0xFF) + 1;
+		}
+		int[] sa = new int[n];
+		CircularSuffixArraySAIS.sais(s, sa, n, R + 1);
+
+		// t[] column and sampled rows from the sorted suffixes
+		byte[] t = new byte[n];
+		sampled = new BitVector(n);
+		int row = 0, m = 0;
+		for (int i = 0; i < n; i++) {
+			if (sa[i] == 0) row = i;
+			else t[i] = text[off + sa[i] - 1];
+			if (sa[i] % sampleRate == 0) {
+				sampled.set(i);
+				m++;
+			}
+		}
+		sentinel = row;
+		sampled.build();
+		samples = new int[m];
+		for (int i = 0, k = 0; i < n; i++) {
+			if (sa[i] % sampleRate == 0) samples[k++] = sa[i];
+		}
+
+		// C[c] - number of chars smaller than c, the sentinel included
+		C[0] = 1;
+		for (int i = off; i < off + N; i++) {
+			C[(text[i] & 0xFF) + 1]++;
+		}
+		for (int c = 0; c < R; c++) {
+			C[c + 1] += C[c];
+		}
+
+		bwt = new WaveletMatrix(t);
+	}
+
+	/**
+	 * Returns the length of the indexed text
+	 * @return length
+	 */
+	public int length() {
+		return N;
+	}
+
+	/**
+	 * Returns the number of occurrences of pattern in the text
+	 * @param pattern the pattern
+	 * @return number of occurrences
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public int count(byte[] pattern) {
+		long range = range(pattern);
+		return (int) (range & 0xFFFFFFFFL) - (int) (range >>> 32);
+	}
+
+	/**
+	 * Returns the number of occurrences of pattern (extended ASCII) in the text
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public int count(String pattern) {
+		return count(bytes(pattern));
+	}
+
+	/**
+	 * Returns the positions of all occurrences of pattern in the text, in
+	 * increasing order
+	 * @param pattern the pattern
+	 * @return positions
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public int[] locate(byte[] pattern) {
+		long range = range(pattern);
+		int sp = (int) (range >>> 32), ep = (int) (range & 0xFFFFFFFFL);
+		int[] positions = new int[ep - sp];
+		for (int row = sp; row < ep; row++) {
+			// walk back until a sampled row; each step moves one position left
+			// (suffix 0 is sampled, so the walk never reaches the sentinel)
+			int r = row, steps = 0;
+			while (!sampled.get(r)) {
+				r = lf(r);
+				steps++;
+			}
+			positions[row - sp] = samples[sampled.rank1(r)] + steps;
+		}
+		java.util.Arrays.sort(positions);
+		return positions;
+	}
+
+	/**
+	 * Returns the positions of all occurrences of pattern (extended ASCII) in
+	 * the text, in increasing order
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public int[] locate(String pattern) {
+		return locate(bytes(pattern));
+	}
+
+	// backward search: rows sp..ep-1 start with pattern, packed as sp << 32 | ep
+	private long range(byte[] pattern) {
+		if (pattern == null) throw new java.lang.IllegalArgumentException();
+		if (pattern.length > N) return 0;
+		// row 0 is the suffix made of the sentinel alone; the empty pattern
+		// occurs at the N positions of the text
+		if (pattern.length == 0) return (1L << 32) | (N + 1);
+		int sp = 0, ep = N + 1;
+		for (int i = pattern.length - 1; i >= 0 && sp < ep; i--) {
+			int c = pattern[i] & 0xFF;
+			sp = C[c] + rank(c, sp);
+			ep = C[c] + rank(c, ep);
+		}
+		if (sp >= ep) return 0;
+		return ((long) sp << 32) | ep;
+	}
+
+	// number of bytes c in t[0..i-1], not counting the 0 in the sentinel row
+	private int rank(int c, int i) {
+		int r = bwt.rank(c, i);
+		return c == 0 && sentinel < i ? r - 1 : r;
+	}
+
+	// row of the suffix that starts one character before the suffix of row i
+	// (row i must not be the sentinel row)
+	private int lf(int i) {
+		int c = bwt.access(i);
+		return C[c] + rank(c, i);
+	}
+
+	// 8-bit (extended ASCII) characters of s
+	private static byte[] bytes(String s) {
+		if (s == null) throw new java.lang.IllegalArgumentException();
+		return s.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Bit vector with constant-time rank, using the number of 1s before each
+	 * 64-bit word
+	 */
+	private static class BitVector {
+		private final long[] words;
+		private final int[] ranks; // number of 1s in words[0..k-1]
+
+		BitVector(int n) {
+			words = new long[(n >>> 6) + 1];
+			ranks = new int[words.length];
+		}
+
+		void set(int i) {
+			words[i >>> 6] |= 1L << (i & 63);
+		}
+
+		boolean get(int i) {
+			return (words[i >>> 6] & (1L << (i & 63))) != 0;
+		}
+
+		// to be called after the last set()
+		void build() {
+			for (int k = 1; k < words.length; k++) {
+				ranks[k] = ranks[k - 1] + Long.bitCount(words[k - 1]);
+			}
+		}
+
+		// number of 1s in positions 0..i-1
+		int rank1(int i) {
+			return ranks[i >>> 6] + Long.bitCount(words[i >>> 6] & ((1L << (i & 63)) - 1));
+		}
+
+		// number of 0s in positions 0..i-1
+		int rank0(int i) {
+			return i - rank1(i);
+		}
+	}
+
+	/**
+	 * Wavelet matrix of a byte sequence: level l holds bit 7-l of every byte,
+	 * with the bytes of each level stably sorted by the bits of the levels above
+	 * (0s first), so rank(c, i) and access(i) take one rank per level
+	 */
+	private static class WaveletMatrix {
+		private static final int LEVELS = 8;
+		private final BitVector[] levels = new BitVector[LEVELS];
+		private final int[] zeros = new int[LEVELS]; // number of 0s in each level
+
+		WaveletMatrix(byte[] a) {
+			int n = a.length;
+			byte[] current = a.clone();
+			byte[] next = new byte[n];
+			for (int l = 0; l < LEVELS; l++) {
+				int bit = LEVELS - 1 - l;
+				BitVector level = new BitVector(n);
+				for (int i = 0; i < n; i++) {
+					if (((current[i] >>> bit) & 1) == 1) level.set(i);
+					else zeros[l]++;
+				}
+				level.build();
+				levels[l] = level;
+
+				// stable partition by the bit: 0s first, then 1s
+				int z = 0, o = zeros[l];
+				for (int i = 0; i < n; i++) {
+					if (((current[i] >>> bit) & 1) == 1) next[o++] = current[i];
+					else next[z++] = current[i];
+				}
+				byte[] swap = current;
+				current = next;
+				next = swap;
+			}
+		}
+
+		// the byte at position i
+		int access(int i) {
+			int c = 0;
+			for (int l = 0; l < LEVELS; l++) {
+				if (levels[l].get(i)) {
+					c = (c << 1) | 1;
+					i = zeros[l] + levels[l].rank1(i);
+				}
+				else {
+					c <<= 1;
+					i = levels[l].rank0(i);
+				}
+			}
+			return c;
+		}
+
+		// number of bytes c in positions 0..i-1
+		int rank(int c, int i) {
+			int s = 0;
+			for (int l = 0; l < LEVELS; l++) {
+				if (((c >>> (LEVELS - 1 - l)) & 1) == 1) {
+					s = zeros[l] + levels[l].rank1(s);
+					i = zeros[l] + levels[l].rank1(i);
+				}
+				else {
+					s = levels[l].rank0(s);
+					i = levels[l].rank0(i);
+				}
+			}
+			return i - s;
+		}
+	}
+
+	// index standard input and print the count and positions of each pattern in args
+	public static void main(String[] args) {
+		byte[] buffer = new byte[1 << 16];
+		int n = 0;
+		while (!BinaryStdIn.isEmpty()) {
+			if (n == buffer.length) buffer = java.util.Arrays.copyOf(buffer, 2 * n);
+			buffer[n++] = BinaryStdIn.readByte();
+		}
+		FMIndex index = new FMIndex(buffer, 0, n, DEFAULT_SAMPLE_RATE);
+		for (String pattern : args) {
+			int[] positions = index.locate(pattern);
+			System.out.print(pattern + ": " + index.count(pattern));
+			for (int k = 0; k < Math.min(positions.length, 10); k++) {
+				System.out.print(" " + positions[k]);
+			}
+			System.out.println(positions.length > 10 ? " ..." : "");
+		}
+	}
+}
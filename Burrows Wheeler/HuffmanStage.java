@@ -0,0 +1,188 @@
+import java.util.PriorityQueue;
+
+/**
+ * Canonical Huffman coding of a block of bytes
+ *
+ * Encoding:
+ * 1. Count the frequency of each byte and build the Huffman tree; only the code
+ * length of each byte (its depth in the tree) is kept
+ * 2. Assign canonical codes: bytes are ordered by (code length, byte) and get
+ * consecutive codes, so the code lengths alone describe the code
+ * 3. Write the block length (int), the 256 code lengths (one byte each) and the
+ * codes of the bytes, most significant bit first
+ *
+ * Decoding uses a lookup table indexed by the next LOOKUP_BITS bits, which
+ * resolves every code that is not longer than LOOKUP_BITS in one step; longer
+ * (rare) codes are decoded bit by bit with the canonical first-code/count tables.
+ *
+ * @author pkrastnikova
+ *
+ */
+public class HuffmanStage implements Stage {
+	private static final int R = 256; // extended ASCII
+	private static final int LOOKUP_BITS = 10;
+	private static final int HEADER = 4 + R; // block length and code lengths
+
+	public String name() {
+		return "huffman";
+	}
+
+	public byte[] encode(byte[] block) {
+		int[] freq = new int[R];
+		for (int i = 0; i < block.length; i++) {
+			freq[block[i] & 0xFF]++;
+		}
+		int[] length = codeLengths(freq);
+		long[] code = canonicalCodes(length);
+
+		long bits = 0;
+		for (int c = 0; c < R; c++) {
+			bits += (long) freq[c] * length[c];
+		}
+		byte[] out = new byte[HEADER + (int) ((bits + 7) >>> 3)];
+		Compressor.writeInt(out, 0, block.length);
+		for (int c = 0; c < R; c++) {
+			out[4 + c] = (byte) length[c];
+		}
+
+		// the low count bits of buffer are pending output
+		int pos = HEADER;
+		long buffer = 0;
+		int count = 0;
+		for (int i = 0; i < block.length; i++) {
+			int c = block[i] & 0xFF;
+			buffer = (buffer << length[c]) | code[c];
+			count += length[c];
+			while (count >= 8) {
+				count -= 8;
+				out[pos++] = (byte) (buffer >>> count);
+			}
+		}
+		if (count > 0) out[pos] = (byte) (buffer << (8 - count));
+		return out;
+	}
+
+	public byte[] decode(byte[] block) {
+		byte[] out = new byte[Compressor.readInt(block, 0)];
+		int[] length = new int[R];
+		int maxLength = 0;
+		for (int c = 0; c < R; c++) {
+			length[c] = block[4 + c] & 0xFF;
+			maxLength = Math.max(maxLength, length[c]);
+		}
+		long[] code = canonicalCodes(length);
+
+		// count[l] - number of codes of length l, symbols[] - bytes in canonical order
+		int[] count = new int[maxLength + 1];
+		int[] symbols = new int[R];
+		int n = 0;
+		for (int l = 1; l <= maxLength; l++) {
+			for (int c = 0; c < R; c++) {
+				if (length[c] == l) {
+					count[l]++;
+					symbols[n++] = c;
+				}
+			}
+		}
+
+		// lookup[bits] = (byte << 8) | length for codes of at most LOOKUP_BITS bits
+		int[] lookup = new int[1 << LOOKUP_BITS];
+		for (int c = 0; c < R; c++) {
+			int l = length[c];
+			if (l == 0 || l > LOOKUP_BITS) continue;
+			int first = (int) code[c] << (LOOKUP_BITS - l);
+			for (int k = 0; k < 1 << (LOOKUP_BITS - l); k++) {
+				lookup[first + k] = (c << 8) | l;
+			}
+		}
+
+		long bitPos = (long) HEADER * 8; // position of the next bit
+		for (int i = 0; i < out.length; i++) {
+			int entry = lookup[peek(block, bitPos, LOOKUP_BITS)];
+			if (entry != 0) {
+				out[i] = (byte) (entry >>> 8);
+				bitPos += entry & 0xFF;
+				continue;
+			}
+
+			// long code: walk the canonical code lengths one bit at a time
+			int value = 0, first = 0, index = 0;
+			for (int l = 1; l <= maxLength; l++) {
+				value |= peek(block, bitPos++, 1);
+				if (value - first < count[l]) {
+					out[i] = (byte) symbols[index + value - first];
+					break;
+				}
+				index += count[l];
+				first = (first + count[l]) << 1;
+				value <<= 1;
+			}
+		}
+		return out;
+	}
+
+	// the k bits of a[] starting at bit position bitPos (0s past the end)
+	private static int peek(byte[] a, long bitPos, int k) {
+		int pos = (int) (bitPos >>> 3);
+		int window = 0; // 24 bits starting at byte pos
+		for (int j = 0; j < 3; j++) {
+			window <<= 8;
+			if (pos + j < a.length) window |= a[pos + j] & 0xFF;
+		}
+		return (window >>> (24 - (int) (bitPos & 7) - k)) & ((1 << k) - 1);
+	}
+
+	// depth of each byte in the Huffman tree, 0 for bytes that do not occur
+	private static int[] codeLengths(int[] freq) {
+		long[] weight = new long[2 * R - 1];
+		int[] parent = new int[2 * R - 1];
+		PriorityQueue<Integer> pq = new PriorityQueue<Integer>((x, y) ->
+				weight[x] != weight[y] ? Long.compare(weight[x], weight[y]) : Integer.compare(x, y));
+		for (int c = 0; c < R; c++) {
+			weight[c] = freq[c];
+			if (freq[c] > 0) pq.add(c);
+		}
+
+		int[] length = new int[R];
+		if (pq.size() == 1) {
+			length[pq.poll()] = 1; // a single byte still needs a 1-bit code
+			return length;
+		}
+
+		// merge the two lightest trees until one tree is left
+		int node = R;
+		while (pq.size() > 1) {
+			int x = pq.poll();
+			int y = pq.poll();
+			weight[node] = weight[x] + weight[y];
+			parent[x] = node;
+			parent[y] = node;
+			pq.add(node++);
+		}
+		int root = node - 1;
+
+		for (int c = 0; c < R; c++) {
+			if (freq[c] == 0) continue;
+			for (int v = c; v != root; v = parent[v]) {
+				length[c]++;
+			}
+		}
+		return length;
+	}
+
+	// canonical code of each byte given the code lengths
+	private static long[] canonicalCodes(int[] length) {
+		long[] code = new long[R];
+		long next = 0;
+		int previous = 0;
+		for (int l = 1; l < 64; l++) {
+			for (int c = 0; c < R; c++) {
+				if (length[c] != l) continue;
+				next <<= l - previous;
+				previous = l;
+				code[c] = next++;
+			}
+		}
+		return code;
+	}
+}
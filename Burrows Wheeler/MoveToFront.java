@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 import edu.princeton.cs.algs4.BinaryStdIn;
 import edu.princeton.cs.algs4.BinaryStdOut;
 
@@ -10,20 +12,41 @@ import edu.princeton.cs.algs4.BinaryStdOut;
  * and move that character to the front of the sequence. This way the most frequent characters would
  * appear at a smaller integer positions, which is important for Huffman compression.
  * 
- * The implementation uses following algorithm: for each s[i] char from string s, start from the beginning of
- * abc array with all 256 ASCII codes and swap each abc[k] with current abc[0]
- * when s[i] is reached it will remain at the front
- * then output the index (ASCII code) of that element and stop the iteration
+ * The implementation uses following algorithm: for each s[i] char from string s, scan abc array
+ * with all 256 ASCII codes from the beginning until s[i] is found at position k,
+ * output k, then shift abc[0..k-1] one place to the right with a single System.arraycopy
+ * and put s[i] at the front (the scan uses SIMD compares when the JVM supports
+ * them, see SymbolKernels). Decoding needs no scan at all, since abc[k] is the char at position k.
+ * After Burrows-Wheeler transform most positions are 0 or small, so the cost per char
+ * is close to constant; the encode()/decode() overloads work in bulk over byte[] blocks.
+ *
+ * The block overloads also take a Rule, the variants of Balkenhol, Kurtz and Shtarkov
+ * that keep the front symbol in place when a run is interrupted by a single other char
+ * (AAABAAA gives 0 0 0 k 0 0 0 instead of 0 0 0 k 1 0 0):
+ * - MTF1: a char found at position 1 moves to the front, any other char moves to position 1
+ * - MTF2: as MTF1, but a char found at position 1 moves to the front only if the
+ *   previous position was not 0 (inside a run it stays at position 1)
  */
 
 /**
- * Apply move-to-front encoding, reading from standard input and writing to standard output
- * Dependency: BinaryStdIn.java, BinaryStdOut.java
+ * Apply move-to-front encoding, reading from standard input and writing to standard output,
+ * or to byte[]/ByteBuffer blocks through the static encode()/decode() overloads
+ * Dependency: SymbolKernels.java, BinaryStdIn.java, BinaryStdOut.java
  * 
  * @author pkrastnikova
  *
  */
 public class MoveToFront {
+    private static final SymbolKernels KERNELS = SymbolKernels.get(); // SIMD search when available
+
+    /**
+     * Where a char moves in the alphabet after it is written
+     */
+    public enum Rule {
+    	MTF, // always to the front
+    	MTF1, // from position 1 to the front, otherwise to position 1
+    	MTF2 // as MTF1, but from position 1 to the front only after a non-zero position
+    }
     
     public static void encode() {
     	
@@ -32,58 +55,204 @@ public class MoveToFront {
     	char [] abc = {'A', 'B', 'C', 'D', 'E', 'F'};
     	*/
     	
-    	// read string from input stream
-    	char [] s = BinaryStdIn.readString().toCharArray();
-    	
-    	// initialize the alphabet
-    	char [] abc = new char[256]; // 
-    	for (char i = 0; i < 256; i++) {
-    		abc[i] = i;
-    	}
-    
-    	// read each char from the string and look for it in the alphabet
-    	for (int i = 0; i < s.length; i++) {
-    		char temp;
-    		for (char k = 0; k < 256; k++ ) {
-    			temp = abc[k];
-    			abc[k] = abc[0];
-    			abc[0] = temp;
-    			if (abc[0]==s[i]){
-    				BinaryStdOut.write(k); // output the ascii code
-    				break; // stop scanning when char is found
-    			}
-    		} 	
+    	// read bytes from input stream
+    	byte [] s = readBytes();
+    	byte [] out = new byte[s.length];
+    	encode(s, 0, s.length, out);
+    	for (int i = 0; i < out.length; i++) {
+    		BinaryStdOut.write(out[i]); // output the ascii code
     	}
 		BinaryStdOut.flush();
 		BinaryStdIn.close();
     }
 
+    /**
+     * Apply move-to-front encoding to len bytes of in[] starting at off
+     * @param out receives the positions (ASCII codes) of the bytes
+     * @throws IllegalArgumentException when an array is null, off/len are out of
+     *         range or out is shorter than len
+     */
+    public static void encode(byte[] in, int off, int len, byte[] out) {
+    	validate(in, off, len, out);
+    	byte [] abc = alphabet();
+    	for (int i = 0; i < len; i++) {
+    		out[i] = (byte) rank(abc, in[off + i]);
+    	}
+    }
+
+    /**
+     * Apply move-to-front encoding with the given rule to len bytes of in[] starting at off
+     * @param out receives the positions of the bytes
+     * @throws IllegalArgumentException when rule or an array is null, off/len are out of
+     *         range or out is shorter than len
+     */
+    public static void encode(Rule rule, byte[] in, int off, int len, byte[] out) {
+    	if (rule == null) throw new java.lang.IllegalArgumentException();
+    	if (rule == Rule.MTF) {
+    		encode(in, off, len, out);
+    		return;
+    	}
+    	validate(in, off, len, out);
+    	byte [] abc = alphabet();
+    	int previous = 0;
+    	for (int i = 0; i < len; i++) {
+    		byte c = in[off + i];
+    		int k = abc[0] == c ? 0 : KERNELS.indexOf(abc, c);
+    		move(rule, abc, k, previous);
+    		out[i] = (byte) k;
+    		previous = k;
+    	}
+    }
+
+    /**
+     * Apply move-to-front encoding to the remaining bytes of in, writing the
+     * positions to out; the positions of both buffers are advanced
+     * @throws IllegalArgumentException when a buffer is null or out has less
+     *         room than in has remaining
+     */
+    public static void encode(ByteBuffer in, ByteBuffer out) {
+    	validate(in, out);
+    	byte [] abc = alphabet();
+    	while (in.hasRemaining()) {
+    		out.put((byte) rank(abc, in.get()));
+    	}
+    }
+
     /**
      * Apply move-to-front decoding, reading from standard input and writing to standard output
      * Use the same algorithm as in encode() but with input stream of integers (ASCII codes)
      */
     
     public static void decode() {
-    	char [] s = BinaryStdIn.readString().toCharArray();	
-    	char [] abc = new char[256];
-    	for (char i = 0; i < 256; i++) {
-    		abc[i] = i;
-    	}
-    	for (int i = 0; i < s.length; i++) {
-    		char temp;		
-    		for (char k = 0; k < 256; k++ ) { 			
-    			temp = abc[k];
-    			abc[k] = abc[0];
-    			abc[0] = temp;
-    			if (k == s[i]){  // compare ASCII codes
-    				BinaryStdOut.write(abc[0]); //output the char
-    				break;
-    			}
-    		}
+    	byte [] s = readBytes();
+    	byte [] out = new byte[s.length];
+    	decode(s, 0, s.length, out);
+    	for (int i = 0; i < out.length; i++) {
+    		BinaryStdOut.write(out[i]); //output the char
     	}
 		BinaryStdOut.flush();
     }
 
+    /**
+     * Apply move-to-front decoding to len bytes of in[] starting at off
+     * @param out receives the decoded bytes
+     * @throws IllegalArgumentException when an array is null, off/len are out of
+     *         range or out is shorter than len
+     */
+    public static void decode(byte[] in, int off, int len, byte[] out) {
+    	validate(in, off, len, out);
+    	byte [] abc = alphabet();
+    	for (int i = 0; i < len; i++) {
+    		out[i] = symbol(abc, in[off + i] & 0xFF);
+    	}
+    }
+
+    /**
+     * Apply move-to-front decoding with the given rule (the rule of the encoding)
+     * to len bytes of in[] starting at off
+     * @param out receives the decoded bytes
+     * @throws IllegalArgumentException when rule or an array is null, off/len are out of
+     *         range or out is shorter than len
+     */
+    public static void decode(Rule rule, byte[] in, int off, int len, byte[] out) {
+    	if (rule == null) throw new java.lang.IllegalArgumentException();
+    	if (rule == Rule.MTF) {
+    		decode(in, off, len, out);
+    		return;
+    	}
+    	validate(in, off, len, out);
+    	byte [] abc = alphabet();
+    	int previous = 0;
+    	for (int i = 0; i < len; i++) {
+    		int k = in[off + i] & 0xFF;
+    		out[i] = abc[k];
+    		move(rule, abc, k, previous);
+    		previous = k;
+    	}
+    }
+
+    /**
+     * Apply move-to-front decoding to the remaining bytes of in, writing the
+     * decoded bytes to out; the positions of both buffers are advanced
+     * @throws IllegalArgumentException when a buffer is null or out has less
+     *         room than in has remaining
+     */
+    public static void decode(ByteBuffer in, ByteBuffer out) {
+    	validate(in, out);
+    	byte [] abc = alphabet();
+    	while (in.hasRemaining()) {
+    		out.put(symbol(abc, in.get() & 0xFF));
+    	}
+    }
+
+    // initialize the alphabet
+    private static byte[] alphabet() {
+    	byte [] abc = new byte[256];
+    	for (int i = 0; i < 256; i++) {
+    		abc[i] = (byte) i;
+    	}
+    	return abc;
+    }
+
+    // look for c in the alphabet (counted position), move it to the front
+    // with a single shift and return its position
+    private static int rank(byte[] abc, byte c) {
+    	if (abc[0] == c) return 0; // most common case after Burrows-Wheeler transform
+    	int k = KERNELS.indexOf(abc, c);
+    	System.arraycopy(abc, 0, abc, 1, k);
+    	abc[0] = c;
+    	return k;
+    }
+
+    // abc[] is the inverse table of rank(): the char at position k is abc[k]
+    // move it to the front with a single shift and return it
+    private static byte symbol(byte[] abc, int k) {
+    	byte c = abc[k];
+    	if (k > 0) {
+    		System.arraycopy(abc, 0, abc, 1, k);
+    		abc[0] = c;
+    	}
+    	return c;
+    }
+
+    // move the char at position k (the previous char was at position previous)
+    // as MTF1 or MTF2 do
+    private static void move(Rule rule, byte[] abc, int k, int previous) {
+    	if (k == 0) return;
+    	byte c = abc[k];
+    	if (k == 1) {
+    		if (rule == Rule.MTF2 && previous == 0) return; // keep the front char of a run
+    		abc[1] = abc[0];
+    		abc[0] = c;
+    	}
+    	else {
+    		System.arraycopy(abc, 1, abc, 2, k - 1);
+    		abc[1] = c;
+    	}
+    }
+
+    private static void validate(byte[] in, int off, int len, byte[] out) {
+    	if (in == null || out == null || off < 0 || len < 0 || off > in.length - len)
+    		throw new java.lang.IllegalArgumentException();
+    	if (out.length < len) throw new java.lang.IllegalArgumentException();
+    }
+
+    private static void validate(ByteBuffer in, ByteBuffer out) {
+    	if (in == null || out == null) throw new java.lang.IllegalArgumentException();
+    	if (out.remaining() < in.remaining()) throw new java.lang.IllegalArgumentException();
+    }
+
+    // read all remaining bytes of standard input
+    private static byte[] readBytes() {
+    	byte [] buffer = new byte[1 << 16];
+    	int n = 0;
+    	while (!BinaryStdIn.isEmpty()) {
+    		if (n == buffer.length) buffer = java.util.Arrays.copyOf(buffer, 2 * n);
+    		buffer[n++] = BinaryStdIn.readByte();
+    	}
+    	return java.util.Arrays.copyOf(buffer, n);
+    }
+
     // if args[0] is '-', apply move-to-front encoding
     // if args[0] is '+', apply move-to-front decoding
     public static void main(String[] args) {
@@ -0,0 +1,189 @@
+import java.util.BitSet;
+
+/**
+ * Multi-string Burrows–Wheeler transform of a collection of documents
+ *
+ * The documents are concatenated, each one followed by its own separator, and
+ * the suffixes of the whole collection are sorted at once:
+ *
+ *   d0 $1 d1 $2 ... dD-1 $D #
+ *
+ * The separators $1 < $2 < ... < $D are distinct symbols smaller than every
+ * byte and # (the sentinel) is the smallest of all, so the sort is one linear
+ * time SA-IS run over an alphabet of D + 257 symbols instead of one transform
+ * per document, and similar documents share one context: the t[] of a batch of
+ * small records compresses much better than the t[] of each record.
+ *
+ * t[] keeps one byte per row; the rows where t[] is a separator (or the
+ * sentinel) are kept in a BitSet. The separators sort in document order, so
+ * the suffix that starts at the separator of document i is row i + 1 and t[] of
+ * that row is the last byte of document i. Walking back from there with the
+ * LF-mapping recovers document i (in reverse) until the previous separator,
+ * without decoding the other documents.
+ *
+ * Dependency: CircularSuffixArraySAIS.java
+ *
+ * @author pkrastnikova
+ *
+ */
+public class MultiStringBWT {
+	private static final int R = 256; // extended ASCII
+
+	private final byte[] t; // last column, 0 in separator rows
+	private final BitSet separators; // rows where t[] is a separator or the sentinel
+	private final int D; // number of documents
+	private int[] next; // LF-mapping of the byte rows, built when first needed
+
+	/**
+	 * Builds the multi-string transform of the documents
+	 * @param documents the documents, possibly empty
+	 * @throws IllegalArgumentException when called with null argument or a null
+	 *         document, or the collection is too large for one transform
+	 */
+	public MultiStringBWT(byte[][] documents) {
+		if (documents == null) throw new java.lang.IllegalArgumentException();
+		D = documents.length;
+		long total = D + 1L;
+		for (byte[] document : documents) {
+			if (document == null) throw new java.lang.IllegalArgumentException();
+			total += document.length;
+		}
+		if (total + D + R > Integer.MAX_VALUE) throw new java.lang.IllegalArgumentException();
+		int n = (int) total;
+
+		// d0 $1 d1 $2 ... dD-1 $D #: separators 1..D, bytes D+1..D+256, sentinel 0
+		int[] s = new int[n];
+		int k = 0;
+		for (int i = 0; i < D; i++) {
+			for (byte b : documents[i]) {
+				s[k++] = D + 1 + (b & 0xFF);
+			}
+			s[k++] = i + 1;
+		}
+		s[k] = 0;
+
+		int[] sa = new int[n];
+		CircularSuffixArraySAIS.sais(s, sa, n, D + 1 + R);
+
+		// t[i] - symbol before the i-th sorted suffix
+		t = new byte[n];
+		separators = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			int c = s[sa[i] == 0 ? n - 1 : sa[i] - 1];
+			if (c <= D) separators.set(i);
+			else t[i] = (byte) (c - D - 1);
+		}
+	}
+
+	/**
+	 * Rebuilds a transform from its t[] and separator rows, as returned by
+	 * bwt() and separators()
+	 * @throws IllegalArgumentException when an argument is null or the
+	 *         separator rows do not fit t[]
+	 */
+	public MultiStringBWT(byte[] t, BitSet separators) {
+		if (t == null || separators == null || separators.length() > t.length || separators.cardinality() < 1)
+			throw new java.lang.IllegalArgumentException();
+		this.t = t.clone();
+		this.separators = (BitSet) separators.clone();
+		this.D = separators.cardinality() - 1;
+		for (int i = this.separators.nextSetBit(0); i >= 0; i = this.separators.nextSetBit(i + 1)) {
+			this.t[i] = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of documents
+	 * @return number of documents
+	 */
+	public int documents() {
+		return D;
+	}
+
+	/**
+	 * Returns the length of the transform: the total length of the documents
+	 * plus one separator per document and the sentinel
+	 * @return length
+	 */
+	public int length() {
+		return t.length;
+	}
+
+	/**
+	 * Returns t[], with 0 in the separator rows
+	 * @return t[]
+	 */
+	public byte[] bwt() {
+		return t.clone();
+	}
+
+	/**
+	 * Returns the rows of t[] that hold a separator or the sentinel
+	 * @return separator rows
+	 */
+	public BitSet separators() {
+		return (BitSet) separators.clone();
+	}
+
+	/**
+	 * Recovers document i
+	 * @param i index of the document
+	 * @return the document
+	 * @throws IllegalArgumentException when i is not a valid document index
+	 */
+	public byte[] document(int i) {
+		if (i < 0 || i >= D) throw new java.lang.IllegalArgumentException();
+		if (next == null) next = lf();
+
+		// walk back from the row of separator i + 1 up to the previous separator
+		byte[] buffer = new byte[16];
+		int n = 0;
+		for (int row = i + 1; !separators.get(row); row = next[row]) {
+			if (n == buffer.length) buffer = java.util.Arrays.copyOf(buffer, 2 * n);
+			buffer[n++] = t[row];
+		}
+
+		// reverse
+		byte[] document = new byte[n];
+		for (int k = 0; k < n; k++) {
+			document[k] = buffer[n - 1 - k];
+		}
+		return document;
+	}
+
+	// next[i] - row of the suffix that starts with t[i], for the byte rows
+	// (key-indexed counting as in the inverse transform: the D + 1 separator
+	// suffixes come first, then the byte suffixes in the order of t[])
+	private int[] lf() {
+		int[] count = new int[R + 1];
+		for (int i = 0; i < t.length; i++) {
+			if (!separators.get(i)) count[(t[i] & 0xFF) + 1]++;
+		}
+		count[0] = D + 1;
+		for (int r = 0; r < R; r++) {
+			count[r + 1] += count[r];
+		}
+		int[] lf = new int[t.length];
+		for (int i = 0; i < t.length; i++) {
+			if (!separators.get(i)) lf[i] = count[t[i] & 0xFF]++;
+		}
+		return lf;
+	}
+
+	// transform the arguments as documents ($ marks separators) and recover them
+	public static void main(String[] args) {
+		byte[][] documents = new byte[args.length][];
+		for (int i = 0; i < args.length; i++) {
+			documents[i] = args[i].getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+		}
+		MultiStringBWT bwt = new MultiStringBWT(documents);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < bwt.length(); i++) {
+			sb.append(bwt.separators.get(i) ? '$' : (char) (bwt.t[i] & 0xFF));
+		}
+		System.out.println(sb);
+		for (int i = 0; i < bwt.documents(); i++) {
+			System.out.println(i + ": " + new String(bwt.document(i), java.nio.charset.StandardCharsets.ISO_8859_1));
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * One stage of the block compression pipeline run by Compressor
+ *
+ * A stage turns a block into a new block (encode) and recovers the original
+ * block from it (decode), so that decode(encode(block)) equals block.
+ * Each stage writes whatever header it needs to decode into its own output,
+ * so stages can be benchmarked on their own and swapped in and out of a pipeline.
+ *
+ * @author pkrastnikova
+ *
+ */
+public interface Stage {
+
+	/**
+	 * Returns a short name of the stage, used in reports and benchmarks
+	 * @return name
+	 */
+	String name();
+
+	/**
+	 * Encodes a block
+	 * @param block the input of this stage
+	 * @return the encoded block
+	 */
+	byte[] encode(byte[] block);
+
+	/**
+	 * Decodes a block produced by encode()
+	 * @param block the encoded block
+	 * @return the original block
+	 */
+	byte[] decode(byte[] block);
+}
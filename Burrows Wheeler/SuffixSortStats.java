@@ -0,0 +1,113 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opt-in counters and timings of a suffix sort
+ *
+ * Collects the number of character comparisons, character reads, partitions
+ * (with a histogram of partition sizes by powers of 2), the maximum depth
+ * (character position) reached and the time spent in each phase of the sort.
+ *
+ * Counting is enabled with -Dsuffixsort.stats=true. Every hook in the sorters is
+ * guarded by the static final ENABLED flag, so when counting is disabled the JIT
+ * removes the hooks entirely and the sort runs at full speed; stats() then
+ * returns all zeros.
+ *
+ * @author pkrastnikova
+ *
+ */
+public final class SuffixSortStats {
+	static final boolean ENABLED = Boolean.getBoolean("suffixsort.stats");
+
+	private long comparisons;
+	private long charReads;
+	private long partitions;
+	private int maxDepth;
+	private final long[] partitionSizes = new long[32]; // [k] - partitions of size 2^k..2^(k+1)-1
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+
+	void compare() {
+		comparisons++;
+	}
+
+	void charRead() {
+		charReads++;
+	}
+
+	void partition(int size) {
+		partitions++;
+		partitionSizes[31 - Integer.numberOfLeadingZeros(Math.max(size, 1))]++;
+	}
+
+	void depth(int d) {
+		if (d > maxDepth) maxDepth = d;
+	}
+
+	// adds the time since start (System.nanoTime()) to the given phase
+	void phase(String name, long start) {
+		phaseNanos.merge(name, System.nanoTime() - start, Long::sum);
+	}
+
+	/**
+	 * Returns the number of comparisons of two suffixes
+	 * @return comparisons
+	 */
+	public long comparisons() {
+		return comparisons;
+	}
+
+	/**
+	 * Returns the number of characters read from the string
+	 * @return character reads
+	 */
+	public long charReads() {
+		return charReads;
+	}
+
+	/**
+	 * Returns the number of partitions (or passes) sorted
+	 * @return partitions
+	 */
+	public long partitions() {
+		return partitions;
+	}
+
+	/**
+	 * Returns the number of partitions of size 2^k to 2^(k+1)-1
+	 * @param k log2 of the partition size
+	 * @return number of partitions
+	 */
+	public long partitions(int k) {
+		if (k < 0 || k >= partitionSizes.length) throw new java.lang.IllegalArgumentException();
+		return partitionSizes[k];
+	}
+
+	/**
+	 * Returns the maximum depth (character position d) the sort reached
+	 * @return max depth
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the time spent in each phase of the sort, in nanoseconds
+	 * @return phase names and times in the order the phases ran
+	 */
+	public Map<String, Long> phaseNanos() {
+		return java.util.Collections.unmodifiableMap(phaseNanos);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("comparisons: ").append(comparisons);
+		sb.append(", char reads: ").append(charReads);
+		sb.append(", partitions: ").append(partitions);
+		sb.append(", max depth: ").append(maxDepth);
+		for (Map.Entry<String, Long> e : phaseNanos.entrySet()) {
+			sb.append(", ").append(e.getKey()).append(": ").append(e.getValue() / 1000000.0).append(" ms");
+		}
+		return sb.toString();
+	}
+}
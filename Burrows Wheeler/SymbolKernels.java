@@ -0,0 +1,137 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-symbol kernels of the hot loops of the transforms: the histogram of the
+ * inverse Burrows-Wheeler transform and the alphabet search of move-to-front
+ *
+ * This class is the scalar implementation:
+ * - histogram() counts into 4 sub-histograms, one per byte of each group of 4,
+ *   and adds them at the end. Runs of equal bytes (the common case after the
+ *   transform) would otherwise increment the same counter back to back, and
+ *   every increment would wait for the store of the previous one
+ * - indexOf() is a linear search
+ *
+ * get() returns the implementation for this JVM: VectorSymbolKernels (SIMD
+ * compares with jdk.incubator.vector, in vector/) when it was compiled in, the
+ * module is present (run with --add-modules jdk.incubator.vector) and the CPU
+ * has vectors of at least 128 bits, this class otherwise. -Dsymbolkernels=scalar forces the scalar kernels,
+ * to compare the two.
+ *
+ * @author pkrastnikova
+ *
+ */
+class SymbolKernels {
+	private static final SymbolKernels INSTANCE = load();
+
+	/**
+	 * Returns the kernels for this JVM
+	 */
+	static SymbolKernels get() {
+		return INSTANCE;
+	}
+
+	private static SymbolKernels load() {
+		if ("scalar".equals(System.getProperty("symbolkernels"))) return new SymbolKernels();
+		try {
+			// loaded by name: the class only links when jdk.incubator.vector is present
+			Class<?> c = Class.forName("VectorSymbolKernels");
+			SymbolKernels kernels = (SymbolKernels) c.getDeclaredConstructor().newInstance();
+			if (kernels.isSupported()) return kernels;
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			// no vector module: fall back to the scalar kernels
+		}
+		return new SymbolKernels();
+	}
+
+	// false when the vector kernels would not be faster on this CPU
+	boolean isSupported() {
+		return true;
+	}
+
+	/**
+	 * Returns the name of the implementation
+	 */
+	String name() {
+		return "scalar";
+	}
+
+	/**
+	 * Counts the bytes of b from index from to index to - 1 (absolute, the
+	 * position is not used)
+	 * @return count[c] - number of bytes c, for c = 0..255
+	 */
+	int[] histogram(ByteBuffer b, int from, int to) {
+		int[] c0 = new int[256], c1 = new int[256], c2 = new int[256], c3 = new int[256];
+		int i = from;
+		if (b.hasArray()) {
+			byte[] a = b.array();
+			int off = b.arrayOffset();
+			for (; i + 3 < to; i += 4) {
+				c0[a[off + i] & 0xFF]++;
+				c1[a[off + i + 1] & 0xFF]++;
+				c2[a[off + i + 2] & 0xFF]++;
+				c3[a[off + i + 3] & 0xFF]++;
+			}
+			for (; i < to; i++) {
+				c0[a[off + i] & 0xFF]++;
+			}
+		}
+		else {
+			for (; i + 3 < to; i += 4) {
+				c0[b.get(i) & 0xFF]++;
+				c1[b.get(i + 1) & 0xFF]++;
+				c2[b.get(i + 2) & 0xFF]++;
+				c3[b.get(i + 3) & 0xFF]++;
+			}
+			for (; i < to; i++) {
+				c0[b.get(i) & 0xFF]++;
+			}
+		}
+		for (int c = 0; c < 256; c++) {
+			c0[c] += c1[c] + c2[c] + c3[c];
+		}
+		return c0;
+	}
+
+	/**
+	 * Returns the index of the first c in a[], which must contain c
+	 */
+	int indexOf(byte[] a, byte c) {
+		int k = 0;
+		while (a[k] != c) k++;
+		return k;
+	}
+
+	// time the scalar kernels against the kernels of this JVM
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 24;
+		java.util.Random random = new java.util.Random(1);
+		byte[] s = new byte[n];
+		for (int i = 0; i < n; i++) {
+			s[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : 'a'); // runs, as after the transform
+		}
+		byte[] abc = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			abc[i] = (byte) (255 - i);
+		}
+
+		SymbolKernels[] kernels = { new SymbolKernels(), get() };
+		for (int round = 0; round < 5; round++) {
+			for (SymbolKernels k : kernels) {
+				long start = System.nanoTime();
+				int[] count = k.histogram(ByteBuffer.wrap(s), 0, n);
+				long histogram = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				long sum = count['a'];
+				for (int i = 0; i < n / 64; i++) {
+					sum += k.indexOf(abc, s[i]);
+				}
+				long search = System.nanoTime() - start;
+				System.out.println(k.name() + ": histogram " + histogram / 1000000.0 + " ms, indexOf "
+						+ search / 1000000.0 + " ms (" + sum + ")");
+			}
+		}
+	}
+}
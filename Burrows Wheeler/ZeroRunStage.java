@@ -0,0 +1,90 @@
+/**
+ * Zero-run encoding of move-to-front output (the RUNA/RUNB scheme of bzip2)
+ *
+ * After Burrows-Wheeler transform and move-to-front encoding most of the output
+ * is runs of 0. A run of L zeros is written as the digits of L in bijective
+ * base 2, least significant digit first: RUNA stands for digit 1 and RUNB for
+ * digit 2, so a run of any length takes about log2(L) symbols.
+ * Other positions r (1..255) are written as r + 1.
+ *
+ * Symbols are in the range 0..256, so they are stored as bytes with an escape:
+ * 0..254 are stored as they are, 255 and 256 as the escape byte 255 followed by
+ * 0 or 1. Positions that large are rare after move-to-front.
+ * The output starts with the length of the original block (int).
+ *
+ * @author pkrastnikova
+ *
+ */
+public class ZeroRunStage implements Stage {
+	private static final int RUNA = 0;
+	private static final int RUNB = 1;
+	private static final int ESCAPE = 255;
+
+	public String name() {
+		return "zero-run";
+	}
+
+	public byte[] encode(byte[] block) {
+		// each run of L zeros takes at most L symbols, each symbol at most 2 bytes
+		byte[] out = new byte[4 + 2 * block.length];
+		Compressor.writeInt(out, 0, block.length);
+		int pos = 4;
+
+		int run = 0;
+		for (int i = 0; i <= block.length; i++) {
+			if (i < block.length && block[i] == 0) {
+				run++;
+				continue;
+			}
+
+			// write the pending run of zeros in bijective base 2
+			while (run > 0) {
+				if ((run & 1) == 1) {
+					out[pos++] = RUNA;
+					run = (run - 1) >>> 1;
+				}
+				else {
+					out[pos++] = RUNB;
+					run = (run - 2) >>> 1;
+				}
+			}
+
+			if (i < block.length) {
+				int symbol = (block[i] & 0xFF) + 1;
+				if (symbol < ESCAPE) out[pos++] = (byte) symbol;
+				else {
+					out[pos++] = (byte) ESCAPE;
+					out[pos++] = (byte) (symbol - ESCAPE);
+				}
+			}
+		}
+		return java.util.Arrays.copyOf(out, pos);
+	}
+
+	public byte[] decode(byte[] block) {
+		byte[] out = new byte[Compressor.readInt(block, 0)];
+		int n = 0;
+
+		int run = 0; // length of the current run of zeros
+		int digit = 1; // weight of the next RUNA/RUNB digit
+		for (int i = 4; i < block.length; i++) {
+			int symbol = block[i] & 0xFF;
+			if (symbol == RUNA || symbol == RUNB) {
+				run += (symbol == RUNA ? 1 : 2) * digit;
+				digit <<= 1;
+				continue;
+			}
+
+			// output the run of zeros (out[] is already filled with zeros)
+			n += run;
+			run = 0;
+			digit = 1;
+
+			if (symbol == ESCAPE) symbol += block[++i] & 0xFF;
+			out[n++] = (byte) (symbol - 1);
+		}
+		n += run;
+		if (n != out.length) throw new java.lang.IllegalArgumentException();
+		return out;
+	}
+}
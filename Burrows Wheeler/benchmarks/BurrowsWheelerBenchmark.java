@@ -0,0 +1,241 @@
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the Burrows Wheeler package: suffix sorting, the transform
+ * and its inverse, move-to-front and the whole compression pipeline
+ *
+ * Every benchmark runs on a block of size bytes of one of four kinds of input:
+ * - RANDOM: uniformly random bytes (no structure to exploit)
+ * - ENGLISH: words of an English vocabulary with Zipf-like frequencies
+ * - DNA: A, C, G, T with repeated fragments, as in genomes
+ * - REPETITIVE: one 1 KB fragment repeated with rare changes (logs, backups),
+ *   the worst case for comparison-based suffix sorts
+ *
+ * Throughput is reported in operations per second and, through the bytes
+ * counter, in bytes per second (MB/s = bytes / 10^6). Run with -prof gc to get
+ * the allocation rate (gc.alloc.rate in MB/s, gc.alloc.rate.norm in bytes per
+ * operation), so regressions in speed or garbage show up before a release.
+ *
+ * Build and run against the classes of the package, e.g. with jmh-core and
+ * jmh-generator-annprocess (1.37) on the classpath:
+ *
+ *   javac -cp jmh-core.jar:jmh-generator-annprocess.jar:algs4.jar -d out ../*.java BurrowsWheelerBenchmark.java
+ *   java -cp jmh-core.jar:jopt-simple.jar:commons-math3.jar:algs4.jar:out org.openjdk.jmh.Main BurrowsWheelerBenchmark -prof gc
+ *
+ * This builds the scalar kernels on a stock JDK 17. To benchmark the SIMD kernels
+ * of ../vector/ as well, add the sources and the incubator module (also to the
+ * forked JVMs):
+ *
+ *   javac --add-modules jdk.incubator.vector -cp jmh-core.jar:jmh-generator-annprocess.jar:algs4.jar -d out ../*.java ../vector/*.java BurrowsWheelerBenchmark.java
+ *   java --add-modules jdk.incubator.vector -cp jmh-core.jar:jopt-simple.jar:commons-math3.jar:algs4.jar:out org.openjdk.jmh.Main BurrowsWheelerBenchmark -prof gc -jvmArgsAppend "--add-modules=jdk.incubator.vector"
+ *
+ * sort benchmarks each suffix array variant (sorter parameter) except the LSD
+ * sort of CircularSuffixArray1, which makes one pass per character (quadratic).
+ * sortSmall compares it with the 3-way quicksort of CircularSuffixArray on the
+ * first 4096 and 16384 bytes of the input (length parameter), so a default run
+ * answers how the two compare. The prefix is the same for both sizes, so
+ * -p size=65536 runs sortSmall once per input kind.
+ *
+ * Dependency: all the classes of the Burrows Wheeler package, JMH
+ *
+ * @author pkrastnikova
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xmx4g" })
+public class BurrowsWheelerBenchmark {
+
+	public enum Entropy {
+		RANDOM, ENGLISH, DNA, REPETITIVE
+	}
+
+	public enum Sorter {
+		QUICK3, LSD, SAIS, DOUBLING, PACKED
+	}
+
+	@Param({ "65536", "1048576" })
+	public int size;
+
+	@Param({ "RANDOM", "ENGLISH", "DNA", "REPETITIVE" })
+	public Entropy entropy;
+
+	private byte[] input;
+	private byte[] t; // transform of input
+	private int first;
+	private byte[] mtf; // move-to-front encoding of t
+	private byte[] compressed; // input through the whole pipeline
+	private byte[] out; // output of the benchmark
+	private Compressor compressor;
+
+	/**
+	 * Suffix array variant of the sort benchmark (a separate state, so only
+	 * sort runs once per sorter)
+	 */
+	@State(Scope.Benchmark)
+	public static class SortState {
+		@Param({ "QUICK3", "SAIS", "DOUBLING", "PACKED" })
+		public Sorter sorter;
+	}
+
+	/**
+	 * Sorter and block length of the sortSmall benchmark: the two original
+	 * suffix array variants on blocks small enough for the quadratic LSD sort
+	 */
+	@State(Scope.Benchmark)
+	public static class SmallSortState {
+		@Param({ "QUICK3", "LSD" })
+		public Sorter sorter;
+
+		@Param({ "4096", "16384" })
+		public int length;
+	}
+
+	/**
+	 * Bytes processed, reported as a rate next to the operations
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes {
+		public long bytes;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		input = generate(entropy, size, new Random(42));
+		t = new byte[size];
+		first = BurrowsWheeler.transform(input, 0, size, t);
+		mtf = new byte[size];
+		MoveToFront.encode(t, 0, size, mtf);
+		compressor = new Compressor();
+		compressed = compressor.compress(input, 0, size);
+		out = new byte[size];
+	}
+
+	@Benchmark
+	public int sort(SortState state, Bytes bytes) {
+		bytes.bytes += size;
+		switch (state.sorter) {
+		case QUICK3:
+			return new CircularSuffixArray(input, 0, size).index(0);
+		case LSD:
+			return new CircularSuffixArray1(input, 0, size).index(0);
+		case SAIS:
+			return new CircularSuffixArraySAIS(input, 0, size).index(0);
+		case DOUBLING:
+			return new CircularSuffixArrayDoubling(input, 0, size).index(0);
+		default:
+			return new CircularSuffixArrayPacked(input, 0, size).index(0);
+		}
+	}
+
+	@Benchmark
+	public int sortSmall(SmallSortState state, Bytes bytes) {
+		bytes.bytes += state.length;
+		if (state.sorter == Sorter.LSD) return new CircularSuffixArray1(input, 0, state.length).index(0);
+		return new CircularSuffixArray(input, 0, state.length).index(0);
+	}
+
+	@Benchmark
+	public int transform(Bytes bytes) {
+		bytes.bytes += size;
+		return BurrowsWheeler.transform(input, 0, size, out);
+	}
+
+	@Benchmark
+	public byte[] inverseTransform(Bytes bytes) {
+		bytes.bytes += size;
+		BurrowsWheeler.inverseTransform(first, t, 0, size, out);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] moveToFrontEncode(Bytes bytes) {
+		bytes.bytes += size;
+		MoveToFront.encode(t, 0, size, out);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] moveToFrontDecode(Bytes bytes) {
+		bytes.bytes += size;
+		MoveToFront.decode(mtf, 0, size, out);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] compress(Bytes bytes) {
+		bytes.bytes += size;
+		return compressor.compress(input, 0, size);
+	}
+
+	@Benchmark
+	public byte[] decompress(Bytes bytes) {
+		bytes.bytes += size;
+		return compressor.decompress(compressed);
+	}
+
+	private static final String[] WORDS = { "the", "of", "and", "to", "a", "in", "is", "that", "for", "it", "as",
+			"was", "with", "be", "by", "on", "not", "he", "this", "are", "or", "his", "from", "at", "which", "but",
+			"have", "an", "had", "they", "you", "were", "their", "one", "all", "we", "can", "her", "has", "there",
+			"been", "if", "more", "when", "will", "would", "who", "so", "no", "string", "suffix", "transform",
+			"compression", "block", "sorted", "letter", "index", "original", "first", "last" };
+
+	// size bytes of the given kind, the same for every run
+	static byte[] generate(Entropy entropy, int size, Random random) {
+		byte[] s = new byte[size];
+		switch (entropy) {
+		case RANDOM:
+			random.nextBytes(s);
+			break;
+		case ENGLISH:
+			StringBuilder text = new StringBuilder(size + 16);
+			while (text.length() < size) {
+				// Zipf-like: word k with probability about 1/(k+1)
+				int k = (int) Math.min(WORDS.length - 1, Math.exp(random.nextDouble() * Math.log(WORDS.length + 1)) - 1);
+				text.append(WORDS[k]);
+				int p = random.nextInt(20);
+				text.append(p == 0 ? ". " : p == 1 ? ", " : p == 2 ? "\n" : " ");
+			}
+			for (int i = 0; i < size; i++) {
+				s[i] = (byte) text.charAt(i);
+			}
+			break;
+		case DNA:
+			for (int i = 0; i < size; ) {
+				if (i > 1000 && random.nextInt(64) == 0) {
+					// copy an earlier fragment
+					int from = random.nextInt(i - 500), length = Math.min(50 + random.nextInt(450), size - i);
+					System.arraycopy(s, from, s, i, length);
+					i += length;
+				}
+				else s[i++] = (byte) "ACGT".charAt(random.nextInt(4));
+			}
+			break;
+		default:
+			byte[] fragment = generate(Entropy.ENGLISH, 1024, random);
+			for (int i = 0; i < size; i++) {
+				s[i] = random.nextInt(10000) == 0 ? (byte) random.nextInt(256) : fragment[i % fragment.length];
+			}
+		}
+		return s;
+	}
+}
@@ -0,0 +1,253 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+// Fifth variant of CircularSuffixArray, off the Java heap
+
+/**
+ * Circular suffix array of up to 2^63 symbols, kept off the Java heap
+ *
+ * The text is a MemorySegment (for example a memory-mapped file, see
+ * FileChannel.map(mode, offset, size, arena)) and the sorted indices are stored
+ * in a native MemorySegment instead of an int[], so the input is not limited to
+ * 2^31 symbols and the 4N+ bytes of indices are not managed (or scanned) by the
+ * garbage collector. Indices take 4 bytes each when N < 2^32, 5 bytes (40 bits)
+ * when N < 2^40 and 8 bytes above that.
+ *
+ * The suffixes are sorted by prefix doubling as in CircularSuffixArrayDoubling
+ * (O(N log N) time), sequentially and with all working arrays off-heap: about
+ * 5 arrays of N indices, freed as soon as the constructor returns.
+ * The indices themselves are freed deterministically by close() (use
+ * try-with-resources); the suffix array belongs to the thread that created it.
+ *
+ * Uses java.lang.foreign, final in Java 22, so it is kept out of the main
+ * sources (which build on a stock JDK 17) in this directory. It does not depend
+ * on them; from this directory, on Java 22 or later:
+ *
+ *   javac -d out OffHeapSuffixArray.java
+ *   java -cp out OffHeapSuffixArray
+ *
+ * On Java 21 add --enable-preview --release 21 to javac and --enable-preview to java.
+ *
+ * @author pkrastnikova
+ *
+ */
+public class OffHeapSuffixArray implements AutoCloseable {
+	private final Arena arena = Arena.ofConfined();
+	private final MemorySegment text;
+	private final long N; // number of suffixes
+	private final Indices indices; // sorted suffixes
+
+	/**
+	 * Circular suffix array of len bytes of a[] starting at off
+	 * @throws IllegalArgumentException when a is null or off/len are out of range
+	 */
+	public OffHeapSuffixArray(byte[] a, int off, int len) {
+		this(slice(a, off, len));
+	}
+
+	/**
+	 * Circular suffix array of the bytes of text
+	 * The segment must stay accessible while the suffix array is used
+	 * @throws IllegalArgumentException when called with null argument
+	 */
+	public OffHeapSuffixArray(MemorySegment text) {
+		if (text == null) {
+			arena.close();
+			throw new java.lang.IllegalArgumentException();
+		}
+		this.text = text;
+		this.N = text.byteSize();
+		try {
+			this.indices = new Indices(arena, N, width(N));
+			sort();
+		}
+		catch (RuntimeException | Error e) {
+			arena.close();
+			throw e;
+		}
+	}
+
+	private static MemorySegment slice(byte[] a, int off, int len) {
+		if (a == null || off < 0 || len < 0 || off > a.length - len) throw new java.lang.IllegalArgumentException();
+		return MemorySegment.ofArray(a).asSlice(off, len);
+	}
+
+	// bytes per index: the largest value stored is N (a count)
+	private static int width(long n) {
+		if (n < (1L << 32)) return 4;
+		if (n < (1L << 40)) return 5;
+		return 8;
+	}
+
+	private void sort() {
+		if (N == 0) return;
+		int w = width(N);
+		try (Arena scratch = Arena.ofConfined()) {
+			Indices p = indices; // suffixes in sorted order
+			Indices c = new Indices(scratch, N, w); // class of each suffix
+			Indices pn = new Indices(scratch, N, w);
+			Indices cn = new Indices(scratch, N, w);
+			Indices count = new Indices(scratch, N, w);
+
+			// round 0 - sort by the first character with key-indexed counting
+			long[] first = new long[257];
+			for (long i = 0; i < N; i++) {
+				first[charAt(i) + 1]++;
+			}
+			for (int r = 0; r < 256; r++) {
+				first[r + 1] += first[r];
+			}
+			for (long i = 0; i < N; i++) {
+				p.set(first[charAt(i)]++, i);
+			}
+			long classes = 1;
+			c.set(p.get(0), 0);
+			for (long i = 1; i < N; i++) {
+				if (charAt(p.get(i)) != charAt(p.get(i - 1))) classes++;
+				c.set(p.get(i), classes - 1);
+			}
+
+			// double the length of the sorted prefixes each round
+			for (long h = 1; classes < N && h < N; h <<= 1) {
+				// order by the second half: shift the sorted suffixes back by h
+				for (long i = 0; i < N; i++) {
+					long j = p.get(i) - h;
+					pn.set(i, j < 0 ? j + N : j);
+				}
+
+				// stable key-indexed counting sort of pn[] into p[] by class
+				count.clear(classes);
+				for (long i = 0; i < N; i++) {
+					long k = c.get(pn.get(i));
+					count.set(k, count.get(k) + 1);
+				}
+				for (long k = 0, index = 0; k < classes; k++) {
+					long n = count.get(k);
+					count.set(k, index);
+					index += n;
+				}
+				for (long i = 0; i < N; i++) {
+					long s = pn.get(i);
+					long k = c.get(s);
+					long index = count.get(k);
+					p.set(index, s);
+					count.set(k, index + 1);
+				}
+
+				// new classes from the sorted pairs (c[i], c[i+h])
+				classes = 1;
+				cn.set(p.get(0), 0);
+				for (long i = 1; i < N; i++) {
+					long s = p.get(i), t = p.get(i - 1);
+					if (c.get(s) != c.get(t) || c.get(rotate(s, h)) != c.get(rotate(t, h))) classes++;
+					cn.set(s, classes - 1);
+				}
+				Indices swap = c;
+				c = cn;
+				cn = swap;
+			}
+		}
+	}
+
+	private int charAt(long i) {
+		return text.get(ValueLayout.JAVA_BYTE, i) & 0xFF;
+	}
+
+	// index of the suffix h characters after suffix i, (i + h) % N without overflow
+	private long rotate(long i, long h) {
+		long j = i - (N - h);
+		return j < 0 ? j + N : j;
+	}
+
+	// return the length of suffix array
+	public long length() {
+		return N;
+	}
+
+	// returns the original index of ith sorted suffix
+	public long index(long i) {
+		if (i < 0 || i > N - 1) throw new java.lang.IllegalArgumentException();
+		return indices.get(i);
+	}
+
+	/**
+	 * Writes the Burrows-Wheeler transform t[] (last letters of the sorted
+	 * suffixes) to out
+	 * @return first, the row in which the original string ends up
+	 * @throws IllegalArgumentException when out is null or smaller than the text
+	 */
+	public long transform(MemorySegment out) {
+		if (out == null || out.byteSize() < N) throw new java.lang.IllegalArgumentException();
+		long first = 0;
+		for (long i = 0; i < N; i++) {
+			long index = indices.get(i);
+			if (index == 0) first = i;
+			out.set(ValueLayout.JAVA_BYTE, i, text.get(ValueLayout.JAVA_BYTE, index == 0 ? N - 1 : index - 1));
+		}
+		return first;
+	}
+
+	/**
+	 * Frees the indices; the suffix array cannot be used afterwards
+	 */
+	@Override
+	public void close() {
+		arena.close();
+	}
+
+	// array of n unsigned integers of 4, 5 or 8 bytes in a native segment
+	private static class Indices {
+		private final MemorySegment segment;
+		private final int width;
+
+		Indices(Arena arena, long n, int width) {
+			this.segment = arena.allocate(Math.max(1, n) * width, 8);
+			this.width = width;
+		}
+
+		long get(long i) {
+			long offset = i * width;
+			switch (width) {
+			case 4:
+				return segment.get(ValueLayout.JAVA_INT_UNALIGNED, offset) & 0xFFFFFFFFL;
+			case 5:
+				return (segment.get(ValueLayout.JAVA_INT_UNALIGNED, offset) & 0xFFFFFFFFL)
+						| (long) (segment.get(ValueLayout.JAVA_BYTE, offset + 4) & 0xFF) << 32;
+			default:
+				return segment.get(ValueLayout.JAVA_LONG_UNALIGNED, offset);
+			}
+		}
+
+		void set(long i, long x) {
+			long offset = i * width;
+			switch (width) {
+			case 4:
+				segment.set(ValueLayout.JAVA_INT_UNALIGNED, offset, (int) x);
+				break;
+			case 5:
+				segment.set(ValueLayout.JAVA_INT_UNALIGNED, offset, (int) x);
+				segment.set(ValueLayout.JAVA_BYTE, offset + 4, (byte) (x >>> 32));
+				break;
+			default:
+				segment.set(ValueLayout.JAVA_LONG_UNALIGNED, offset, x);
+			}
+		}
+
+		// sets the first n entries to 0
+		void clear(long n) {
+			segment.asSlice(0, n * width).fill((byte) 0);
+		}
+	}
+
+	public static void main(String[] args) {
+		try (OffHeapSuffixArray sf = new OffHeapSuffixArray("ABRACADABRA!".getBytes(), 0, 12)) {
+			System.out.println("Results: ");
+			for (long k = 0; k < sf.length(); k++) {
+				System.out.print(sf.index(k) + " ");
+			}
+			System.out.println();
+			System.out.println(sf.index(2));
+		}
+	}
+}
@@ -0,0 +1,50 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of SymbolKernels with the Vector API (jdk.incubator.vector)
+ *
+ * indexOf() compares a whole vector of the alphabet with the symbol at once
+ * (32 bytes with AVX2, 64 with AVX-512) and takes the first matching lane, so
+ * finding a symbol anywhere in the 256-byte move-to-front alphabet takes at most
+ * 8 (AVX2) or 4 (AVX-512) compares instead of up to 256.
+ *
+ * The histogram stays scalar (inherited): the Vector API has no scatter with
+ * conflict detection, so a vector histogram would have to update the counters
+ * lane by lane, which is what the scalar sub-histograms already do.
+ *
+ * The incubator module is not resolved by default, so this class is kept out of
+ * the main sources in this directory and the package builds without it.
+ * SymbolKernels.get() loads it by name and uses the scalar kernels when it is
+ * absent or cannot link. To build and run with it, from the package directory:
+ *
+ *   javac --add-modules jdk.incubator.vector -cp algs4.jar -d out *.java vector/*.java
+ *   java --add-modules jdk.incubator.vector -cp algs4.jar:out ...
+ *
+ * @author pkrastnikova
+ *
+ */
+class VectorSymbolKernels extends SymbolKernels {
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	@Override
+	boolean isSupported() {
+		return SPECIES.vectorBitSize() >= 128;
+	}
+
+	@Override
+	String name() {
+		return "vector" + SPECIES.vectorBitSize();
+	}
+
+	@Override
+	int indexOf(byte[] a, byte c) {
+		int k = 0;
+		for (int bound = SPECIES.loopBound(a.length); k < bound; k += SPECIES.length()) {
+			int lane = ByteVector.fromArray(SPECIES, a, k).eq(c).firstTrue();
+			if (lane < SPECIES.length()) return k + lane;
+		}
+		while (a[k] != c) k++;
+		return k;
+	}
+}
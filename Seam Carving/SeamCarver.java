@@ -5,6 +5,23 @@
  * width(), height() and energy() methods take constant time
  * other methods run in time proportional to (width x height) of the picture
  * Energy of the pixel is calculated by Dual-gradient energy function
+ * 
+ * Colors and energies are kept in flat row-major arrays: pixel (x, y) is at
+ * index y * stride + x, where stride is the width of the original picture
+ * (removed columns leave unused space at the end of each row).
+ * The energies are also kept column by column, in a mirror where pixel (x, y) is
+ * at index x * columnStride + y (columnStride is the height of the original
+ * picture). The vertical seam search relaxes the picture a row at a time and
+ * reads the row-major energies, the horizontal one relaxes a column at a time and
+ * reads the mirror, so both stream through memory. removeSeam() keeps the mirror
+ * up to date in the same order: a horizontal seam shifts each column of it up,
+ * a vertical seam moves whole columns of it to the left.
+ * 
+ * With a ForkJoinPool (second constructor) the energy is computed in stripes of
+ * rows and each step of the seam search in ranges of the step in parallel; the
+ * steps still run one after the other (each one needs the whole previous step).
+ * Every pixel is computed by the same code in both modes, so the seams are the
+ * same as in the sequential mode.
  *  
  * Dependencies: Picture.java
  * 
@@ -13,38 +30,82 @@
  * @author pkrastnikova
  */
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 import edu.princeton.cs.algs4.Picture;
 import edu.princeton.cs.algs4.StdOut;
 
 public class SeamCarver {
+   private static final int GRAIN = 1024; // min number of pixels of a parallel task
+   
    private int width; // number of columns
    private int height; // number of rows
+   private int stride; // distance between (x, y) and (x, y+1) in the arrays
    
-   private double [][] pixelsEnergy; // energy of each pixel
-   private int [][] pixelsColor;  // color of each pixel
+   private int columnStride; // distance between (x, y) and (x+1, y) in energyByColumn
+   
+   private double [] pixelsEnergy; // energy of each pixel, [y * stride + x]
+   private double [] energyByColumn; // energy of each pixel, [x * columnStride + y]
+   private int [] pixelsColor;  // color of each pixel, [y * stride + x]
+   private final ForkJoinPool pool; // runs the parallel mode, null for sequential
+   private final SeamSearch verticalSearch = new SeamSearch(); // tables of the vertical seam search
+   private final SeamSearch horizontalSearch = new SeamSearch(); // tables of the horizontal seam search
+   private final int[] batchSeam; // seam of the batch methods, of the length of the longer side
    
    /**
     * Creates a seam carver object based on the given picture
     * Initializes width, height and main data structures
-    * [column x] [row y] notation is used
+    * [row y * stride + column x] notation is used
     * @param picture
     */
    public SeamCarver(Picture picture)    {            
+	   this(picture, null);
+   }
+   
+   /**
+    * Creates a seam carver object that computes energies and seams on the given pool
+    * @param picture
+    * @param pool the pool of this seam carver, null for the sequential mode
+    * @throws IllegalArgumentException when picture is null
+    */
+   public SeamCarver(Picture picture, ForkJoinPool pool)    {            
 	   if (picture == null) throw new java.lang.IllegalArgumentException(); 
+	   this.pool = pool;
 	   this.width = picture.width();
 	   this.height = picture.height();
-	   pixelsEnergy = new double [width][height]; //[column x][row y]
-	   pixelsColor = new int [width][height];
-	   for (int x = 0; x < width; x++) {
-		   for (int y = 0; y < height; y++) {
-			   pixelsColor[x][y] = picture.getRGB(x, y);
+	   this.stride = width;
+	   this.columnStride = height;
+	   batchSeam = new int [Math.max(width, height)];
+	   pixelsEnergy = new double [width * height];
+	   energyByColumn = new double [width * height];
+	   pixelsColor = new int [width * height];
+	   for (int y = 0; y < height; y++) {
+		   for (int x = 0; x < width; x++) {
+			   pixelsColor[y * stride + x] = picture.getRGB(x, y);
 		   }
 	   }
-	   for (int x = 0; x < width; x++) {
-           for (int y = 0; y < height; y++) {
-               pixelsEnergy[x][y] = energy(x, y);            
-           }
-       } 
+	   // stripes of rows
+	   forEachRange(height, Math.max(1, GRAIN / Math.max(1, width)), (from, to) -> {
+		   for (int y = from; y < to; y++) {
+	           for (int x = 0; x < width; x++) {
+	               pixelsEnergy[y * stride + x] = energy(x, y);            
+	           }
+	       }
+	   });
+	   // the mirror, in blocks of 8 columns: the rows of a block are read in one
+	   // cache line and each of its 8 columns is written in order
+	   forEachRange((width + 7) / 8, Math.max(1, GRAIN / Math.max(1, 8 * height)), (from, to) -> {
+		   for (int block = from; block < to; block++) {
+			   int last = Math.min(width, 8 * block + 8);
+			   for (int y = 0; y < height; y++) {
+				   for (int x = 8 * block; x < last; x++) {
+					   energyByColumn[x * columnStride + y] = pixelsEnergy[y * stride + x];
+				   }
+			   }
+		   }
+	   });
    }
   
    /**
@@ -53,9 +114,9 @@ public class SeamCarver {
     */
    public Picture picture()  {                        // current picture
 	   Picture currentPicture = new Picture(width(), height());
-	   for (int x = 0; x < width(); x++) {
-		   for (int y = 0; y < height(); y++) {
-			   currentPicture.setRGB(x, y, pixelsColor[x][y]);
+	   for (int y = 0; y < height(); y++) {
+		   for (int x = 0; x < width(); x++) {
+			   currentPicture.setRGB(x, y, pixelsColor[y * stride + x]);
 		   }
 	   }
 	   return currentPicture;
@@ -101,10 +162,7 @@ public class SeamCarver {
     * @return sum of squares of x-gradient RGB central differences
     */
    private int squareX(int x, int y) {
-	   int red = ((pixelsColor[x+1][y] >> 16) & 0xFF) - ((pixelsColor[x-1][y] >> 16) & 0xFF);
-	   int green = ((pixelsColor[x+1][y] >> 8) & 0xFF) - ((pixelsColor[x-1][y] >> 8) & 0xFF);
-	   int blue = ((pixelsColor[x+1][y] >> 0) & 0xFF) - ((pixelsColor[x-1][y] >> 0) & 0xFF);
-	   return red*red + green*green + blue*blue;
+	   return square(pixelsColor[y * stride + x + 1], pixelsColor[y * stride + x - 1]);
    }
    
    /** 
@@ -115,136 +173,358 @@ public class SeamCarver {
     * @return sum of squares of y-gradient RGB central differences
     */
    private int squareY(int x, int y) {
-       int red = ((pixelsColor[x][y+1] >> 16) & 0xFF) - ((pixelsColor[x][y-1]>> 16) & 0xFF);
-       int green = ((pixelsColor[x][y+1] >> 8) & 0xFF) - ((pixelsColor[x][y-1] >> 8) & 0xFF);
-       int blue = ((pixelsColor[x][y+1] >> 0) & 0xFF) - ((pixelsColor[x][y-1] >> 0) & 0xFF);
-	   return red*red + green*green + blue*blue;
+	   return square(pixelsColor[(y + 1) * stride + x], pixelsColor[(y - 1) * stride + x]);
    }
    
-   /**
-    * Transposes current energy and color matrixes 
-    * Used to find and remove horizontal seam
-    */
-   private void transpose() {
-	   double[][] transposedEnergy = new double[height()][width()];
-	   int[][] transposedColor = new int[height()][width()];
-	   for (int col = 0; col < height(); col++) {
-		   for (int row = 0; row < width(); row++) { 
-	            transposedEnergy[col][row] = pixelsEnergy[row][col];
-	            transposedColor[col][row] = pixelsColor[row][col];
-	       }
-	   }   
-	   this.pixelsEnergy = transposedEnergy;
-	   this.pixelsColor = transposedColor;
-	    
-       // exchange width() and height()    
-	   int tempWidth = width();
-	   this.width = height();
-	   this.height = tempWidth;           
+   // sum of squares of the RGB differences of two colors
+   private static int square(int rgb1, int rgb2) {
+	   int red = ((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF);
+	   int green = ((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF);
+	   int blue = ((rgb1 >> 0) & 0xFF) - ((rgb2 >> 0) & 0xFF);
+	   return red*red + green*green + blue*blue;
    }
   
    /**
     * Finds vertical seam (pixels with minimum total energy on the vertical path) 
-    * Helper method: findSeam()
+    * The tables of the search are kept: removeVerticalSeam() updates them, so
+    * the next call only has to walk back the path
+    * Helper class: SeamSearch
     * @return array of indices for the vertical seam 
     */
    public int[] findVerticalSeam() {  // sequence of indices for vertical seam
-	   int [] results = findSeam();
-	   return results;		   
+	   return verticalSearch().seam(new int [height()]);
    }
    
    /**
     * Finds horizontal seam (pixels with minimum total energy on the horizontal path) 
-    * Helper methods: findSeam(), transpose()
+    * The tables of the search are kept as for findVerticalSeam()
+    * Helper class: SeamSearch with the roles of rows and columns swapped
     * @return array of indices for the horizontal seam 
     */
    public int[] findHorizontalSeam() {  // sequence of indices for horizontal seam
-	   transpose(); 
-	   int [] results = findSeam();
-	   transpose();
-       return results;
+	   return horizontalSearch().seam(new int [width()]);
+   }
+   
+   // the vertical search, built when it is not valid
+   private SeamSearch verticalSearch() {
+	   if (!verticalSearch.valid) verticalSearch.build(pixelsEnergy, height(), width(), stride, 1, stride);
+	   return verticalSearch;
+   }
+   
+   // the horizontal search, built when it is not valid
+   private SeamSearch horizontalSearch() {
+	   if (!horizontalSearch.valid) horizontalSearch.build(energyByColumn, width(), height(), columnStride, 1, height());
+	   return horizontalSearch;
+   }
+   
+   // removes k seams of one direction, the seams found by the search
+   private void carve(int k, boolean vertical) {
+	   for (int i = 0; i < k; i++) {
+		   removeSeam(vertical ? verticalSearch().seam(batchSeam) : horizontalSearch().seam(batchSeam), vertical);
+	   }
+   }
+   
+   /**
+    * Removes k vertical seams, one after the other, each the seam that
+    * findVerticalSeam() would return
+    * Same as k calls of findVerticalSeam() and removeVerticalSeam(), without the
+    * checks of the seams, and the unused space of the removed columns is freed
+    * once at the end
+    * @param k number of seams
+    * @throws IllegalArgumentException when k < 0 or k >= width
+    */
+   public void removeVerticalSeams(int k) {
+	   if (k < 0 || k >= width()) throw new java.lang.IllegalArgumentException();
+	   carve(k, true);
+	   compact();
+   }
+   
+   /**
+    * Resizes the picture to targetWidth x targetHeight by removing seams
+    * While both directions have seams to remove, the seam with the lower total
+    * energy of the two is removed first, so the order adapts to the picture
+    * (e.g. rows of sky go before columns of detail). A seam of one direction
+    * makes the search of the other start over, so the other direction is
+    * compared by the cost of its last search, and searched again only when that
+    * cost is the lower one. The searches keep their tables between seams of
+    * their direction, and the unused space is freed once at the end
+    * @param targetWidth the width of the result
+    * @param targetHeight the height of the result
+    * @throws IllegalArgumentException when the target is not between 1 and the current size
+    */
+   public void resizeTo(int targetWidth, int targetHeight) {
+	   if (targetWidth < 1 || targetWidth > width() || targetHeight < 1 || targetHeight > height())
+		   throw new java.lang.IllegalArgumentException();
+	   // last known costs of the seams, -Infinity before the first search
+	   double verticalCost = Double.NEGATIVE_INFINITY, horizontalCost = Double.NEGATIVE_INFINITY;
+	   while (width() > targetWidth || height() > targetHeight) {
+		   boolean vertical;
+		   if (width() == targetWidth) vertical = false;
+		   else if (height() == targetHeight) vertical = true;
+		   else {
+			   if (verticalSearch.valid) verticalCost = verticalSearch.cost();
+			   if (horizontalSearch.valid) horizontalCost = horizontalSearch.cost();
+			   vertical = verticalCost <= horizontalCost;
+			   // chosen by the cost of an old search: search again and compare again
+			   if (vertical && !verticalSearch.valid) {
+				   verticalSearch();
+				   continue;
+			   }
+			   if (!vertical && !horizontalSearch.valid) {
+				   horizontalSearch();
+				   continue;
+			   }
+		   }
+		   carve(1, vertical);
+	   }
+	   compact();
+   }
+   
+   /**
+    * Moves the pixels to arrays of exactly width x height (stride = width and
+    * columnStride = height), when removed seams of either direction left unused
+    * space in the arrays
+    */
+   private void compact() {
+	   if (pixelsEnergy.length == width() * height()) return;
+	   double[] energy = new double [width() * height()];
+	   int[] color = new int [width() * height()];
+	   for (int y = 0; y < height(); y++) {
+		   System.arraycopy(pixelsEnergy, y * stride, energy, y * width(), width());
+		   System.arraycopy(pixelsColor, y * stride, color, y * width(), width());
+	   }
+	   double[] byColumn = new double [width() * height()];
+	   for (int x = 0; x < width(); x++) {
+		   System.arraycopy(energyByColumn, x * columnStride, byColumn, x * height(), height());
+	   }
+	   pixelsEnergy = energy;
+	   pixelsColor = color;
+	   energyByColumn = byColumn;
+	   stride = width();
+	   columnStride = height();
+	   verticalSearch.valid = false;
+	   horizontalSearch.valid = false;
    }
   
    /**
-    * Finds a vertical seam
+    * Shortest path search of a seam of length steps across a grid of size pixels per step;
+    * pixel i of step j has the energy energy[j * stepStride + i * sizeStride]
+    * (rows of pixelsEnergy for a vertical seam, columns of energyByColumn for a
+    * horizontal one, so sizeStride is 1 in both cases)
     * Uses two additional arrays: distTo to save distance from source to each vertex (pixel), and
-    * edgeTo to store the last edge on the path to the given vertex 
-    * @return array of indices, the vertical seam
+    * edgeTo to store the last edge on the path to the given vertex (as the offset -1, 0 or 1
+    * of the previous pixel), both [j * tableStride + i]
+    * The distance of each pixel is pulled from its 2 or 3 neighbors of the previous step;
+    * on ties the lowest index wins
+    * The tables are allocated by the first build and reused by every later build
+    * (the picture only gets smaller), so in the sequential mode searching and removing seams
+    * allocates nothing (findVerticalSeam() and findHorizontalSeam() only allocate
+    * the array they return)
     */
-   private int[] findSeam() {
-	   double[][] distTo = new double [width()][height()];
-	   int[][] edgeTo = new int [width()][height()];
-	   	      
-	   //initialize distTo[][]  - top row with 0s; others with Infinity
-	   for (int i = 0; i < width(); i++) {
-		   distTo[i][0] = 0;
-	   }
-	   for (int i = 0; i < width(); i++) {
-		   for (int j = 1; j < height(); j++) {
-			   distTo[i][j] = Double.POSITIVE_INFINITY;
+   private class SeamSearch {
+	   private int steps, size, stepStride, sizeStride, tableStride;
+	   private double[] energy; // energies of the grid
+	   private double[] distTo;
+	   private byte[] edgeTo;
+	   boolean valid; // false when the tables have to be built again
+	   
+	   /**
+	    * Computes the tables from scratch for the given grid
+	    */
+	   void build(double[] energy, int steps, int size, int stepStride, int sizeStride, int tableStride) {
+		   this.energy = energy;
+		   this.steps = steps;
+		   this.size = size;
+		   this.stepStride = stepStride;
+		   this.sizeStride = sizeStride;
+		   this.tableStride = tableStride;
+		   if (distTo == null || distTo.length < steps * tableStride) {
+			   distTo = new double [steps * tableStride];
+			   edgeTo = new byte [steps * tableStride];
 		   }
+		   
+		   // first step: 0s
+		   java.util.Arrays.fill(distTo, 0, size, 0);
+		   relaxFrom(1);
+		   valid = true;
 	   }
 	   
-	   // traverse the matrix by rows
-	   // for each pixel update distTo and edgeTo of the 3 (or 2) outgoing vertices
-	   for (int j = 0; j < height() - 1; j++) { //rows
-		   for (int i = 0; i < width(); i++) { //columns
-			   if (i == 0) { // first column
-				   relax (0, j, 0, j+1, distTo, edgeTo);
-				   if (width() > 1) relax (0, j, 1, j+1, distTo, edgeTo);
-				   
-			   }
-			   else if (i == width() - 1) { // last column
-				   relax (width()-1, j, width()-2, j+1, distTo, edgeTo);
-				   relax (width()-1, j, width()-1, j+1, distTo, edgeTo);
+	   /**
+	    * Computes the steps from first to the last one, in full
+	    * Traverse the grid by steps, each step in parallel ranges when there is a pool
+	    */
+	   private void relaxFrom(int first) {
+		   if (pool == null) {
+			   for (int j = first; j < steps; j++) {
+				   relax(j, 0, size);
 			   }
-			   else {
-				   relax (i, j, i-1, j+1, distTo, edgeTo);
-				   relax (i, j, i, j+1, distTo, edgeTo);
-				   relax (i, j, i+1, j+1, distTo, edgeTo);
+			   return;
+		   }
+		   inPool(() -> {
+			   for (int j = first; j < steps; j++) {
+				   int step = j;
+				   forEachRange(size, GRAIN, (from, to) -> relax(step, from, to));
 			   }
+		   });
+	   }
+	   
+	   /**
+	    * Computes distTo and edgeTo of pixels from..to-1 of step j from step j-1
+	    * (the pull form of edge relaxation)
+	    */
+	   private void relax(int j, int from, int to) {
+		   int row = j * tableStride;
+		   int base = j * stepStride;
+		   for (int i = from; i < to; i++) {
+			   double e = energy[base + i * sizeStride];
+			   int best = best(row - tableStride, i, e);
+			   distTo[row + i] = distTo[row - tableStride + best] + e;
+			   edgeTo[row + i] = (byte) (best - i);
 		   }
 	   }
 	   
+	   // the neighbor of pixel i (of the given energy) with the shortest path in the
+	   // step at index previous; the sums are compared, not the distances, as two
+	   // distances can round to the same sum (then the lowest index wins)
+	   private int best(int previous, int i, double energy) {
+		   int lo = i > 0 ? i - 1 : 0;
+		   int hi = i < size - 1 ? i + 1 : i;
+		   int best = lo;
+		   for (int k = lo + 1; k <= hi; k++) {
+			   if (distTo[previous + k] + energy < distTo[previous + best] + energy) best = k;
+		   }
+		   return best;
+	   }
 	   
-	   // find pixel from the bottom row with the shortest path (min distTo value)
-	   double minDist = distTo[0][height()-1];
-	   int minX = 0;
-	  
-	   for (int i = 1; i < width(); i++) {
-	   	   if (distTo[i][height()-1] < minDist) {
-	   		   minDist = distTo[i][height()-1];
-	   		   minX = i; 
-	   	   }
+	   // the pixel of the last step with the shortest path (min distTo value)
+	   private int end() {
+		   int last = (steps - 1) * tableStride;
+		   int min = 0;
+		   for (int i = 1; i < size; i++) {
+		   	   if (distTo[last + i] < distTo[last + min]) min = i;
+		   }
+		   return min;
 	   }
-	  
-	   int [] results = new int [height()];
-	   results[height()-1] = minX;
 	   
+	   /**
+	    * Returns the total energy of the seam (without its first pixel, a border
+	    * pixel of energy 1000 in both directions)
+	    */
+	   double cost() {
+		   return distTo[(steps - 1) * tableStride + end()];
+	   }
 	   
-	   // find the path from min bottom row pixel up to the top row
-	   for (int i = height()-1; i > 0; i--) {
-		   minX = edgeTo[minX][i];
-		   minDist += distTo[minX][i-1];
-		   results[i-1] = minX;
+	   /**
+	    * Returns the seam in results[0..steps-1]: the path to the pixel of the last
+	    * step with the shortest path, walked back to the first step
+	    */
+	   int[] seam(int[] results) {
+		   int min = end();
+		   results[steps-1] = min;
+		   for (int j = steps - 1; j > 0; j--) {
+			   min += edgeTo[j * tableStride + min];
+			   results[j-1] = min;
+		   }
+		   return results;
 	   }
 	   
-	   return results;
+	   /**
+	    * Updates the tables after a seam of the direction of this search was removed
+	    * (the pixels and their energies are already updated); below, rows are the
+	    * steps of the search (columns of a horizontal search)
+	    * Pixel x of row y can only change when its energy changed (seam[y]-1 and
+	    * seam[y]), when its neighbors above are no longer the same pixels (seam[y]-2
+	    * to seam[y]+1, as |seam[y] - seam[y-1]| <= 1), or when one of those neighbors
+	    * changed. So each row is recomputed from one left of the first changed pixel
+	    * of the row above to one right of the last one, plus the pixels next to the
+	    * seam, and the pixels whose distTo and edgeTo come out the same stop the
+	    * change from spreading down. Once the changed part is wider than half of
+	    * the row, the rest of the rows are recomputed in full
+	    */
+	   void remove(int[] seam) {
+		   // shift the rows as the pixels
+		   for (int y = 0; y < steps; y++) {
+			   int from = y * tableStride + seam[y];
+			   System.arraycopy(distTo, from + 1, distTo, from, size - seam[y] - 1);
+			   System.arraycopy(edgeTo, from + 1, edgeTo, from, size - seam[y] - 1);
+		   }
+		   size--;
+		   
+		   int lo = 0, hi = -1; // changed pixels of the row above (none in row 0)
+		   for (int y = 1; y < steps; y++) {
+			   int from = Math.max(0, hi < lo ? seam[y] - 2 : Math.min(lo - 1, seam[y] - 2));
+			   int to = Math.min(size - 1, hi < lo ? seam[y] + 1 : Math.max(hi + 1, seam[y] + 1));
+			   if (2 * (to - from + 1) > size) {
+				   relaxFrom(y);
+				   return;
+			   }
+			   
+			   int row = y * tableStride;
+			   int base = y * stepStride;
+			   lo = Integer.MAX_VALUE;
+			   hi = -1;
+			   for (int i = from; i <= to; i++) {
+				   double e = energy[base + i * sizeStride];
+				   int best = best(row - tableStride, i, e);
+				   double dist = distTo[row - tableStride + best] + e;
+				   if (dist != distTo[row + i] || best - i != edgeTo[row + i]) {
+					   distTo[row + i] = dist;
+					   edgeTo[row + i] = (byte) (best - i);
+					   lo = Math.min(lo, i);
+					   hi = i;
+				   }
+			   }
+		   }
+	   }
    }
    
    /**
-    * Private method for updating distTo and edgeTo for edge v -> w, using edge-relaxation technique
-    * @param xFrom x-coordinate of v
-    * @param yFrom y-coordinate of v
-    * @param xTo x-coordinate of w
-    * @param yTo y-coordinate of w
-    * @param distTo[][] distances from source to each vertex
-    * @param edgeTo[][] last edge (previous vertex) on the path to each vertex
+    * Work on a range from..to-1 of indices
     */
-   private void relax (int xFrom, int yFrom, int xTo, int yTo, double [][] distTo, int [][] edgeTo){
-	   if (distTo[xTo][yTo] > distTo[xFrom][yFrom] + pixelsEnergy[xTo][yTo]) {
-		   distTo[xTo][yTo] = distTo[xFrom][yFrom] + pixelsEnergy[xTo][yTo];
-		   edgeTo[xTo][yTo] = xFrom;
+   private interface Range {
+	   void run(int from, int to);
+   }
+   
+   /**
+    * Runs body over 0..n-1: in one call in the sequential mode, else in ranges
+    * of at least grain indices on the pool; returns when all ranges are done
+    */
+   private void forEachRange(int n, int grain, Range body) {
+	   if (pool == null || n < 2 * grain) body.run(0, n);
+	   else if (ForkJoinTask.getPool() == pool) new RangeTask(body, 0, n, grain).invoke();
+	   else pool.invoke(new RangeTask(body, 0, n, grain));
+   }
+   
+   /**
+    * Runs task on the pool (so the tasks it forks are cheap) and waits for it
+    */
+   private void inPool(Runnable task) {
+	   if (pool == null || ForkJoinTask.getPool() == pool) task.run();
+	   else pool.invoke(ForkJoinTask.adapt(task));
+   }
+   
+   /**
+    * Splits a range in halves until the halves are smaller than 2 * grain
+    */
+   private static class RangeTask extends RecursiveAction {
+	   private static final long serialVersionUID = 1L;
+	   private final transient Range body;
+	   private final int from, to, grain;
+	   
+	   RangeTask(Range body, int from, int to, int grain) {
+		   this.body = body;
+		   this.from = from;
+		   this.to = to;
+		   this.grain = grain;
+	   }
+	   
+	   @Override
+	   protected void compute() {
+		   if (to - from < 2 * grain) body.run(from, to);
+		   else {
+			   int mid = (from + to) >>> 1;
+			   invokeAll(new RangeTask(body, from, mid, grain), new RangeTask(body, mid, to, grain));
+		   }
 	   }
    }
    
@@ -252,11 +532,13 @@ public class SeamCarver {
     * Checks if the seam is a valid one
     * @throws IllegalArgumentException when seam is not valid
     * @param seam
+    * @param length number of pixels of the seam
+    * @param range number of positions of each pixel
     */
-   private void validateSeam(int[] seam){
-	   if (seam.length != height) throw new java.lang.IllegalArgumentException();
+   private void validateSeam(int[] seam, int length, int range){
+	   if (seam.length != length) throw new java.lang.IllegalArgumentException();
 	   for (int i = 0; i < seam.length; i++) {
-			   if (seam[i] < 0 || seam[i] >= width) throw new java.lang.IllegalArgumentException();
+			   if (seam[i] < 0 || seam[i] >= range) throw new java.lang.IllegalArgumentException();
 			   if (i < seam.length -1 && Math.abs(seam[i] - seam[i+1]) > 1) throw new java.lang.IllegalArgumentException();
 	   }
    }
@@ -269,141 +551,149 @@ public class SeamCarver {
     * @param seam the seam to be removed
     */
    public void removeVerticalSeam(int[] seam) {
-	   /*System.out.println("removeVertical: ");
-	   System.out.println("Initial width: " + width());
-	   System.out.println("Initial height: " + height());
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
-	   
 	   if (seam == null) throw new java.lang.IllegalArgumentException();
 	   if (width() <= 1) throw new java.lang.IllegalArgumentException();
-	   validateSeam(seam);
-	   removeSeam(seam);
-	   
-	   /*System.out.println("After removeVertical, width, height: " + width() + height());
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
+	   validateSeam(seam, height(), width());
+	   removeSeam(seam, true);
    }
    
    /** 
     * Removes horizontal seam
-    * Helper methods: removeSeam(), transpose()
+    * Helper method: removeSeam()
     * @throws IllegalArgumentException when called with null argument
     * @throws IllegalArgumentException when the image has 1 or 0 rows 
     * @param seam the seam to be removed
     */
    public void removeHorizontalSeam(int[] seam)  { // remove horizontal seam from current picture
-	   /*System.out.println("removeHorizontal: ");
-	   System.out.println("Initial width: " + width());
-	   System.out.println("Initial height: " + height());
-	   System.out.println("Initial state before transpose: ");
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
-	   
 	   if (seam == null) throw new java.lang.IllegalArgumentException();
 	   if (height() <= 1) throw new java.lang.IllegalArgumentException();
-	   
-	   transpose();
-	   
-	   /*System.out.println("removeHorizontal, after first transpose:");
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
-	   
-	   validateSeam(seam);
-	   removeSeam(seam);
-
-	   /*System.out.println("After removeHorizontal, width, height : "  + width() + height());
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
-	   
-	   transpose();
-
-	   /*System.out.println("After transpose back, width, height : " + width()+ height());
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
-	 
+	   validateSeam(seam, width(), height());
+	   removeSeam(seam, false);
    }
    
-   
    /**
-    * Private method for removing a vertical seam
-    * @param seam the seam to be removed
+    * Private method for removing a seam
+    * Both directions shift the pixels row by row, and the mirror of the energies
+    * column by column:
+    * vertical - the pixels of row y right of seam[y] move one column left; in the
+    * mirror, column x takes the rows y of column x+1 where x >= seam[y]
+    * horizontal - the pixels of row y below seam[x] (y >= seam[x]) take the
+    * pixel of row y+1 in their column; in the mirror, each column x moves up by
+    * one from seam[x]
+    * @param seam the seam to be removed (may be longer than the seam)
+    * @param vertical true for a vertical seam, false for a horizontal one
     */
-   private void removeSeam(int [] seam) {   // remove vertical seam from current picture
-	  
-	   // shift cells
-	   for (int i = 0; i < height(); i++) { //rows
-		   double [] tempEnergy = new double [width()];
-		   int [] tempColor = new int [width()];
-		   for (int j = 0; j < width(); j++) { //columns
-			   tempEnergy[j] =  pixelsEnergy[j][i];
-			   tempColor[j] =  pixelsColor[j][i];
+   private void removeSeam(int [] seam, boolean vertical) {
+	   int length = vertical ? height() : width();
+	   if (vertical) {
+		   for (int y = 0; y < height(); y++) { //rows
+			   int from = y * stride + seam[y];
+			   System.arraycopy(pixelsEnergy, from + 1, pixelsEnergy, from, width() - seam[y] - 1);
+			   System.arraycopy(pixelsColor, from + 1, pixelsColor, from, width() - seam[y] - 1);
 		   }
-		   System.arraycopy(tempEnergy, seam[i]+1, tempEnergy, seam[i], width()-seam[i]-1);
-		   System.arraycopy(tempColor, seam[i]+1, tempColor, seam[i], width()-seam[i]-1);
-		   for (int j = 0; j < width()-1; j++) {
-			   pixelsEnergy[j][i] = tempEnergy[j];
-			   pixelsColor[j][i] = tempColor[j];
+		   int first = seam[0];
+		   for (int y = 1; y < height(); y++) {
+			   first = Math.min(first, seam[y]);
 		   }
+		   for (int x = first; x < width() - 1; x++) { //columns
+			   int column = x * columnStride;
+			   for (int y = 0; y < height(); y++) { //rows
+				   if (x >= seam[y]) energyByColumn[column + y] = energyByColumn[column + columnStride + y];
+			   }
+		   }
+		   this.width--;
+	   }
+	   else {
+		   for (int y = 0; y < height() - 1; y++) { //rows
+			   int row = y * stride;
+			   for (int x = 0; x < width(); x++) { //columns
+				   if (y >= seam[x]) {
+					   pixelsEnergy[row + x] = pixelsEnergy[row + stride + x];
+					   pixelsColor[row + x] = pixelsColor[row + stride + x];
+				   }
+			   }
+		   }
+		   for (int x = 0; x < width(); x++) { //columns
+			   int from = x * columnStride + seam[x];
+			   System.arraycopy(energyByColumn, from + 1, energyByColumn, from, height() - seam[x] - 1);
+		   }
+		   this.height--;
 	   }
-	   
-	   this.width--;
-	   
-	   //System.out.println("Width at the end of removeSeam:" + width);
-	   //System.out.println("After shift: ");
-	   /*for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }*/
-	  
-	   
 	   
 	   // recalculate energy for removed element and the element before
-	   for (int i = 1; i < seam.length-1; i++) {
+	   for (int i = 1; i < length-1; i++) {
 		   int delIndex = seam[i];
-		   if (delIndex < width() && delIndex >= 0) {
-			   pixelsEnergy[delIndex][i] = energy(delIndex,i);
+		   if (vertical) {
+			   if (delIndex < width()) updateEnergy(delIndex, i);
+			   if (delIndex-1 >= 0) updateEnergy(delIndex - 1, i);
 		   }
-		  
-		   if (delIndex-1 >= 0) {
-			   pixelsEnergy[delIndex-1][i] = energy(delIndex-1,i);
+		   else {
+			   if (delIndex < height()) updateEnergy(i, delIndex);
+			   if (delIndex-1 >= 0) updateEnergy(i, delIndex - 1);
 		   }
 	   }
-	 
-	   /*System.out.println("After recalculate energy: ");
-	   for (int i = 0; i < height(); i++) {
-           for (int j = 0; j < width(); j++)
-               StdOut.printf("%9.2f ", pixelsEnergy[j][i]);
-           StdOut.println();
-       }
-	   */
-	  
-	   //System.out.println("Width after resize:" + width());
-	   //System.out.println("Height after resize:" + height());
 	   
+	   // update the tables of the search of this direction, the other one has to
+	   // start over (a vertical seam moves pixels across every column, and the
+	   // other way around)
+	   if (vertical) {
+		   if (verticalSearch.valid) verticalSearch.remove(seam);
+		   horizontalSearch.valid = false;
+	   }
+	   else {
+		   if (horizontalSearch.valid) horizontalSearch.remove(seam);
+		   verticalSearch.valid = false;
+	   }
    }
    
    
+   // recomputes the energy of pixel (x, y) in both layouts
+   private void updateEnergy(int x, int y) {
+	   double e = energy(x, y);
+	   pixelsEnergy[y * stride + x] = e;
+	   energyByColumn[x * columnStride + y] = e;
+   }
+   
+   
+   /**
+    * Checks that carving allocates nothing once the tables are built: counts the
+    * bytes allocated by this thread (HotSpot ThreadMXBean) while seams of both
+    * directions are found and removed on a random picture
+    * @throws IllegalStateException when anything was allocated
+    */
+   private static void allocationCheck() {
+	   java.util.Random random = new java.util.Random(1);
+	   Picture picture = new Picture(600, 400);
+	   for (int y = 0; y < picture.height(); y++) {
+		   for (int x = 0; x < picture.width(); x++) {
+			   picture.setRGB(x, y, random.nextInt(1 << 24));
+		   }
+	   }
+	   SeamCarver carver = new SeamCarver(picture);
+	   carver.carve(10, true); // the first searches allocate the tables
+	   carver.carve(10, false);
+	   
+	   com.sun.management.ThreadMXBean bean =
+			   (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+	   long before = bean.getCurrentThreadAllocatedBytes();
+	   long overhead = bean.getCurrentThreadAllocatedBytes() - before; // of the call itself
+	   before = bean.getCurrentThreadAllocatedBytes();
+	   for (int round = 0; round < 10; round++) {
+		   carver.carve(10, true);
+		   carver.carve(10, false);
+	   }
+	   long allocated = bean.getCurrentThreadAllocatedBytes() - before - overhead;
+	   System.out.println("allocated by 200 seams: " + allocated + " bytes");
+	   if (allocated > 0) throw new java.lang.IllegalStateException();
+   }
+   
+   // args[0] is a picture: find and remove a vertical seam
+   // args[0] is -alloc: check that carving allocates nothing
    public static void main(String[] args) {
+	   if (args[0].equals("-alloc")) {
+		   allocationCheck();
+		   return;
+	   }
 	   Picture picture = new Picture(args[0]);
        SeamCarver carver = new SeamCarver(picture);
        System.out.println("width: " + carver.width());